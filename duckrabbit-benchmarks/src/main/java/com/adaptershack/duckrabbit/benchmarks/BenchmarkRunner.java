@@ -0,0 +1,29 @@
+/*
+ * BenchmarkRunner.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler turned on, so that the bytes
+ * allocated per call are reported along with the time. Takes the same
+ * arguments as the JMH command line, e.g. a regular expression to pick
+ * which benchmarks to run.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+}
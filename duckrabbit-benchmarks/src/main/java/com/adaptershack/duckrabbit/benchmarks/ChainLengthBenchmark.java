@@ -0,0 +1,102 @@
+/*
+ * ChainLengthBenchmark.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaptershack.duckrabbit.InvocationChain;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Filler;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Hit;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Target;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Wide;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.WideTarget;
+
+/**
+ * The cost of a call through chains of 1 to 16 links, where the method
+ * is found on either the first link or the last one. With others set, the
+ * methods of a Wide proxy are called a lot first, so that the code that
+ * calls every delegate method has seen more than just the one measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ChainLengthBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int length;
+
+    @Param({"first", "last"})
+    public String hit;
+
+    @Param({"reflection", "generated"})
+    public String engine;
+
+    @Param({"0", "8"})
+    public int others;
+
+    private Hit proxy;
+    private int x = 41;
+
+    @Setup
+    public void setup() {
+        InvocationChain chain = new InvocationChain();
+        for(int i=0; i<length; i++) {
+            boolean target = "first".equals(hit) ? i == 0 : i == length - 1;
+            chain.add(target ? new Target() : new Filler());
+        }
+        chain.addInterface(Hit.class);
+        proxy = (Hit) chain.newProxyInstance(Fixtures.engine(engine));
+
+        if( others > 0 ) {
+            InvocationChain wide = new InvocationChain(new WideTarget());
+            wide.addInterface(Wide.class);
+            Wide w = (Wide) wide.newProxyInstance(Fixtures.engine(engine));
+            int sum = 0;
+            for(int i=0; i<200_000; i++) {
+                for(int j=0; j<others; j++) {
+                    sum += call(w, j, i);
+                }
+                sum += proxy.hit(i);
+            }
+            x += sum & 1;
+        }
+    }
+
+    private static int call(Wide w, int which, int x) {
+        switch(which % 8) {
+            case 0: return w.a(x);
+            case 1: return w.b(x);
+            case 2: return w.c(x);
+            case 3: return w.d(x);
+            case 4: return w.e(x);
+            case 5: return w.f(x);
+            case 6: return w.g(x);
+            default: return w.h(x);
+        }
+    }
+
+    @Benchmark
+    public int call() {
+        return proxy.hit(x);
+    }
+
+}
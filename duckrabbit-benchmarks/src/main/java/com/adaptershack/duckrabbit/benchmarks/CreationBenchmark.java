@@ -0,0 +1,76 @@
+/*
+ * CreationBenchmark.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaptershack.duckrabbit.DynamicDelegator;
+import com.adaptershack.duckrabbit.ProxyEngine;
+import com.adaptershack.duckrabbit.ProxyTemplate;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Calculator;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.HandWritten;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.RealCalculator;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Wrapper;
+
+/**
+ * The cost of making a proxy, which is paid every time something
+ * like a Connection is wrapped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CreationBenchmark {
+
+    @Param({"reflection", "generated"})
+    public String engine;
+
+    private ProxyEngine proxyEngine;
+    private ProxyTemplate<Calculator> template;
+    private final Calculator real = new RealCalculator();
+
+    @Setup
+    public void setup() {
+        proxyEngine = Fixtures.engine(engine);
+        template = new ProxyTemplate<>(proxyEngine, Calculator.class, null, Wrapper.class, RealCalculator.class);
+    }
+
+    @Benchmark
+    public Calculator handWritten() {
+        return new HandWritten(real);
+    }
+
+    @Benchmark
+    public Calculator dynamicDelegator() {
+        return new Wrapper(real).getProxy(proxyEngine);
+    }
+
+    @Benchmark
+    public Calculator staticGetProxy() {
+        return DynamicDelegator.getProxy(proxyEngine, Calculator.class, real);
+    }
+
+    @Benchmark
+    public Calculator template() {
+        return template.newInstance(new Wrapper(real), real);
+    }
+
+}
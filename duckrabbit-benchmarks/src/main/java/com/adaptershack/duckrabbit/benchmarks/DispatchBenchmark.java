@@ -0,0 +1,70 @@
+/*
+ * DispatchBenchmark.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Calculator;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.Kind;
+import com.adaptershack.duckrabbit.benchmarks.Fixtures.RealCalculator;
+
+/**
+ * The cost of a single call: straight to the object, through a
+ * hand-written delegate, and through proxies made by each engine.
+ * Covers primitive and object arguments, and methods that are
+ * overridden by the wrapper versus delegated to the wrapped object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DispatchBenchmark {
+
+    @Param({"DIRECT", "HANDWRITTEN", "REFLECTION", "GENERATED"})
+    public Kind kind;
+
+    private Calculator calculator;
+    private int a = 17;
+    private int b = 25;
+    private String s = "duck";
+    private String t = "rabbit";
+
+    @Setup
+    public void setup() {
+        calculator = kind.make(new RealCalculator());
+    }
+
+    @Benchmark
+    public int primitiveArgs() {
+        return calculator.add(a, b);
+    }
+
+    @Benchmark
+    public String objectArgs() {
+        return calculator.concat(s, t);
+    }
+
+    @Benchmark
+    public String overridden() {
+        return calculator.name();
+    }
+
+}
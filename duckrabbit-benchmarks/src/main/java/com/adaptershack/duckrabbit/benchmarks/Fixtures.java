@@ -0,0 +1,148 @@
+/*
+ * Fixtures.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit.benchmarks;
+
+import com.adaptershack.duckrabbit.DynamicDelegator;
+import com.adaptershack.duckrabbit.ProxyEngine;
+
+/**
+ * The interfaces and classes that the benchmarks call through.
+ */
+public class Fixtures {
+
+    /** Something with both primitive and object methods. */
+    public interface Calculator {
+        int add(int a, int b);
+        String concat(String a, String b);
+        String name();
+    }
+
+    /** The "real" implementation that gets wrapped. */
+    public static final class RealCalculator implements Calculator {
+        public int add(int a, int b) {
+            return a + b;
+        }
+        public String concat(String a, String b) {
+            return a.concat(b);
+        }
+        public String name() {
+            return "real";
+        }
+    }
+
+    /**
+     * The way you'd do it without this library: override one method
+     * and type out the delegation for the rest.
+     */
+    public static final class HandWritten implements Calculator {
+        private final Calculator wrapped;
+
+        public HandWritten(Calculator wrapped) {
+            this.wrapped = wrapped;
+        }
+        public int add(int a, int b) {
+            return wrapped.add(a, b);
+        }
+        public String concat(String a, String b) {
+            return wrapped.concat(a, b);
+        }
+        public String name() {
+            return "wrapper";
+        }
+    }
+
+    /** The same thing as HandWritten, as a DynamicDelegator. */
+    public static class Wrapper extends DynamicDelegator<Calculator> {
+        public Wrapper(Calculator wrapped) {
+            super(wrapped);
+        }
+        public String name() {
+            return "wrapper";
+        }
+    }
+
+    /** The ways a Calculator can be had. */
+    public enum Kind {
+        DIRECT, HANDWRITTEN, REFLECTION, GENERATED;
+
+        public Calculator make(Calculator real) {
+            switch(this) {
+                case DIRECT: return real;
+                case HANDWRITTEN: return new HandWritten(real);
+                case REFLECTION: return new Wrapper(real).getProxy(ProxyEngine.REFLECTION);
+                default: return new Wrapper(real).getProxy(ProxyEngine.GENERATED);
+            }
+        }
+    }
+
+    /** An interface with one method, for chains of various lengths. */
+    public interface Hit {
+        int hit(int x);
+    }
+
+    /** Duck-typed implementation of Hit, found by matching names. */
+    public static final class Target {
+        public int hit(int x) {
+            return x + 1;
+        }
+    }
+
+    /** Takes up a place in a chain without having anything to offer. */
+    public static final class Filler {
+        public int miss(int x) {
+            return x;
+        }
+    }
+
+    /** An interface with more methods, for calling lots of different ones. */
+    public interface Wide {
+        int a(int x);
+        int b(int x);
+        int c(int x);
+        int d(int x);
+        int e(int x);
+        int f(int x);
+        int g(int x);
+        int h(int x);
+    }
+
+    /** Duck-typed implementation of Wide. */
+    public static final class WideTarget {
+        public int a(int x) {
+            return x + 1;
+        }
+        public int b(int x) {
+            return x + 2;
+        }
+        public int c(int x) {
+            return x + 3;
+        }
+        public int d(int x) {
+            return x + 4;
+        }
+        public int e(int x) {
+            return x + 5;
+        }
+        public int f(int x) {
+            return x + 6;
+        }
+        public int g(int x) {
+            return x + 7;
+        }
+        public int h(int x) {
+            return x + 8;
+        }
+    }
+
+    /**
+     * Returns the engine with the given name.
+     */
+    public static ProxyEngine engine(String name) {
+        return "generated".equals(name) ? ProxyEngine.GENERATED : ProxyEngine.REFLECTION;
+    }
+
+}
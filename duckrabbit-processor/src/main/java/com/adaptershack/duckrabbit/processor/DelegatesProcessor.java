@@ -0,0 +1,419 @@
+/*
+ * DelegatesProcessor.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Writes out the delegating classes for DynamicDelegator subclasses
+ * marked with the Delegates annotation. For a class named Foo, a class
+ * named FooDelegator is written to the same package. It extends Foo,
+ * implements the interfaces listed in the annotation, and contains a
+ * plain Java method for each interface method that Foo does not already
+ * have, which calls the same method on the wrapped object, as returned by
+ * <code>getWrapped()</code> so that objects supplied lazily are made when
+ * they are first needed.
+ * <p>
+ * The methods follow the same rules as a proxy made by DynamicDelegator:
+ * a method in Foo wins, otherwise the call goes to the wrapped object,
+ * otherwise UnsupportedOperationException is thrown.
+ *
+ * @see com.adaptershack.duckrabbit.Delegates
+ */
+@SupportedAnnotationTypes(DelegatesProcessor.DELEGATES)
+public class DelegatesProcessor extends AbstractProcessor {
+
+    static final String DELEGATES = "com.adaptershack.duckrabbit.Delegates";
+    static final String DYNAMIC_DELEGATOR = "com.adaptershack.duckrabbit.DynamicDelegator";
+    static final String PROXY_ENGINE = "com.adaptershack.duckrabbit.ProxyEngine";
+    static final String SUFFIX = "Delegator";
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        TypeElement delegates = processingEnv.getElementUtils().getTypeElement(DELEGATES);
+        if( delegates == null ) {
+            return false;
+        }
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+
+        for(Element e : env.getElementsAnnotatedWith(delegates)) {
+            if( e.getKind() != ElementKind.CLASS ) {
+                error(e, "@Delegates can only be used on classes");
+                continue;
+            }
+            try {
+                generate((TypeElement) e);
+            } catch (IOException ex) {
+                error(e, "could not write delegator: " + ex);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+
+        if( !check(type) ) {
+            return;
+        }
+
+        TypeMirror wrappedType = wrappedType(type);
+        List<DeclaredType> interfaces = new ArrayList<>();
+        for(TypeMirror i : annotatedInterfaces(type)) {
+            Element ie = types.asElement(i);
+            if( ie == null || ie.getKind() != ElementKind.INTERFACE ) {
+                error(type, i + " is not an interface");
+                return;
+            }
+            // use the wrapped object's type arguments if it is the same
+            // interface, otherwise fall back to the raw type
+            if( wrappedType != null && types.isSameType(types.erasure(wrappedType), types.erasure(i)) ) {
+                interfaces.add((DeclaredType) wrappedType);
+            } else {
+                interfaces.add((DeclaredType) types.erasure(i));
+            }
+        }
+
+        String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+        String name = flatName(type) + SUFFIX;
+
+        // interfaces the compiler can't tell the wrapped object implements
+        List<DeclaredType> unchecked = new ArrayList<>();
+        for(DeclaredType i : interfaces) {
+            if( wrappedType == null || !types.isSameType(wrappedType, i) ) {
+                unchecked.add(i);
+            }
+        }
+
+        StringBuilder body = new StringBuilder();
+        writeConstructors(body, type, name, unchecked);
+
+        Map<String, ExecutableElement> done = new LinkedHashMap<>();
+        for(DeclaredType i : interfaces) {
+            boolean needsCast = unchecked.contains(i);
+            for(ExecutableElement m : ElementFilter.methodsIn(elements.getAllMembers((TypeElement) i.asElement()))) {
+                if( m.getModifiers().contains(Modifier.STATIC)
+                        || m.getEnclosingElement().getKind() != ElementKind.INTERFACE ) {
+                    continue;
+                }
+                ExecutableType t = (ExecutableType) types.asMemberOf(i, m);
+                String key = key(m, t);
+                if( done.containsKey(key) ) {
+                    continue;
+                }
+                done.put(key, m);
+
+                ExecutableElement existing = findImplementation(type, m.getSimpleName().toString(), key);
+                if( existing != null ) {
+                    if( !existing.getModifiers().contains(Modifier.PUBLIC) ) {
+                        error(existing, "must be public, since it implements " + i + "." + m.getSimpleName());
+                    }
+                    continue;
+                }
+                writeForwarder(body, i, m, t, needsCast);
+            }
+        }
+
+        boolean returnsThis = wrappedType == null || isImplemented(wrappedType, interfaces);
+        if( returnsThis ) {
+            writeGetProxy(body, wrappedType == null ? "java.lang.Object" : wrappedType.toString());
+        }
+
+        String qualified = pkg.isEmpty() ? name : pkg + "." + name;
+        try( PrintWriter out = new PrintWriter(
+                processingEnv.getFiler().createSourceFile(qualified, type).openWriter()) ) {
+            if( !pkg.isEmpty() ) {
+                out.println("package " + pkg + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Delegating implementation of " + type.getQualifiedName() + ".");
+            out.println(" * Generated by " + getClass().getName() + ", do not edit.");
+            if( returnsThis ) {
+                out.println(" * <p>");
+                out.println(" * getProxy returns this object itself, so interceptors, metrics, result");
+                out.println(" * caching, batching, bulkheads, leak tracking and asynchronous calls set");
+                out.println(" * up in " + type.getSimpleName() + " are ignored, as is the engine passed to getProxy.");
+            }
+            out.println(" */");
+            out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\", \"deprecation\"})");
+            out.print("public class " + name + " extends " + type.getQualifiedName());
+            String sep = " implements ";
+            for(DeclaredType i : interfaces) {
+                out.print(sep + i);
+                sep = ", ";
+            }
+            out.println(" {");
+            out.print(body);
+            out.println("}");
+        }
+    }
+
+    /**
+     * Makes sure the annotated class is something that can be extended
+     * by the generated one.
+     */
+    private boolean check(TypeElement type) {
+        TypeElement delegator = elements.getTypeElement(DYNAMIC_DELEGATOR);
+        if( !types.isSubtype(types.erasure(type.asType()), types.erasure(delegator.asType())) ) {
+            error(type, "@Delegates classes must extend DynamicDelegator");
+            return false;
+        }
+        if( type.getModifiers().contains(Modifier.FINAL) || type.getModifiers().contains(Modifier.PRIVATE) ) {
+            error(type, "@Delegates classes can't be final or private");
+            return false;
+        }
+        if( type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) ) {
+            error(type, "@Delegates classes must be top level or static");
+            return false;
+        }
+        if( !type.getTypeParameters().isEmpty() ) {
+            error(type, "@Delegates classes can't have type parameters");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the type argument given to DynamicDelegator by the class
+     * or one of its superclasses, or null if it can't be found.
+     */
+    private TypeMirror wrappedType(TypeElement type) {
+        TypeMirror delegator = types.erasure(elements.getTypeElement(DYNAMIC_DELEGATOR).asType());
+        TypeMirror t = type.asType();
+        while( t.getKind() == TypeKind.DECLARED ) {
+            if( types.isSameType(types.erasure(t), delegator) ) {
+                List<? extends TypeMirror> args = ((DeclaredType) t).getTypeArguments();
+                return args.isEmpty() || args.get(0).getKind() != TypeKind.DECLARED ? null : args.get(0);
+            }
+            t = types.directSupertypes(t).get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the classes listed in the annotation.
+     */
+    private List<TypeMirror> annotatedInterfaces(TypeElement type) {
+        List<TypeMirror> result = new ArrayList<>();
+        for(AnnotationMirror a : type.getAnnotationMirrors()) {
+            if( !((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(DELEGATES) ) {
+                continue;
+            }
+            for(Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : a.getElementValues().entrySet()) {
+                Object value = e.getValue().getValue();
+                if( value instanceof List ) {
+                    for(Object v : (List<?>) value) {
+                        result.add((TypeMirror) ((AnnotationValue) v).getValue());
+                    }
+                } else {
+                    result.add((TypeMirror) value);
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean isImplemented(TypeMirror wrappedType, List<DeclaredType> interfaces) {
+        for(DeclaredType i : interfaces) {
+            if( types.isSameType(types.erasure(wrappedType), types.erasure(i)) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the concrete method with this name and signature that the
+     * class already has, or inherits, if any.
+     */
+    private ExecutableElement findImplementation(TypeElement type, String name, String key) {
+        for(ExecutableElement c : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if( !c.getSimpleName().contentEquals(name)
+                    || c.getModifiers().contains(Modifier.ABSTRACT)
+                    || c.getModifiers().contains(Modifier.STATIC) ) {
+                continue;
+            }
+            ExecutableType t = (ExecutableType) types.asMemberOf((DeclaredType) type.asType(), c);
+            if( key.equals(key(c, t)) ) {
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The name and erased parameter types, which is what decides
+     * whether one method overrides another.
+     */
+    private String key(ExecutableElement m, ExecutableType t) {
+        StringBuilder sb = new StringBuilder(m.getSimpleName()).append('(');
+        for(TypeMirror p : t.getParameterTypes()) {
+            sb.append(types.erasure(p)).append(',');
+        }
+        return sb.append(')').toString();
+    }
+
+    private void writeConstructors(StringBuilder out, TypeElement type, String name, List<DeclaredType> unchecked) {
+        for(ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if( c.getModifiers().contains(Modifier.PRIVATE) ) {
+                continue;
+            }
+            out.append("\n    public ").append(name).append('(');
+            writeParameters(out, c, (ExecutableType) c.asType());
+            out.append(')');
+            writeThrows(out, ((ExecutableType) c.asType()).getThrownTypes());
+            out.append(" {\n        super(");
+            writeArguments(out, c);
+            out.append(");\n");
+            if( !unchecked.isEmpty() ) {
+                out.append("        requireWrapped(");
+                String sep = "";
+                for(DeclaredType i : unchecked) {
+                    out.append(sep).append(types.erasure(i)).append(".class");
+                    sep = ", ";
+                }
+                out.append(");\n");
+            }
+            out.append("    }\n");
+        }
+    }
+
+    private void writeForwarder(StringBuilder out, DeclaredType i, ExecutableElement m, ExecutableType t,
+            boolean cast) {
+        String name = m.getSimpleName().toString();
+        out.append("\n    @Override\n    public ");
+        if( !t.getTypeVariables().isEmpty() ) {
+            out.append('<');
+            String sep = "";
+            for(TypeVariable v : t.getTypeVariables()) {
+                out.append(sep).append(v);
+                if( !v.getUpperBound().toString().equals("java.lang.Object") ) {
+                    out.append(" extends ").append(v.getUpperBound());
+                }
+                sep = ", ";
+            }
+            out.append("> ");
+        }
+        out.append(t.getReturnType()).append(' ').append(name).append('(');
+        writeParameters(out, m, t);
+        out.append(')');
+        writeThrows(out, t.getThrownTypes());
+        out.append(" {\n");
+        String ret = t.getReturnType().getKind() != TypeKind.VOID ? "return " : "";
+        out.append("        if( getWrapped() == null ) {\n");
+        if( m.getModifiers().contains(Modifier.DEFAULT) ) {
+            // nothing to forward to, but the interface says what to do
+            out.append("            ").append(ret).append(types.erasure(i)).append(".super.")
+                .append(name).append('(');
+            writeArguments(out, m);
+            out.append(");\n");
+            if( ret.isEmpty() ) {
+                out.append("            return;\n");
+            }
+        } else {
+            out.append("            throw new UnsupportedOperationException(\"")
+                .append(types.erasure(i)).append('.').append(name).append("\");\n");
+        }
+        out.append("        }\n        ").append(ret);
+        out.append(cast ? "((" + i + ") getWrapped())." : "getWrapped().").append(name).append('(');
+        writeArguments(out, m);
+        out.append(");\n    }\n");
+    }
+
+    private void writeGetProxy(StringBuilder out, String wrappedType) {
+        out.append("\n    @Override\n    public ").append(wrappedType).append(" getProxy() {\n");
+        out.append("        thisProxy = this;\n        return this;\n    }\n");
+        out.append("\n    @Override\n    public ").append(wrappedType).append(" getProxy(")
+            .append(PROXY_ENGINE).append(" engine) {\n");
+        out.append("        return getProxy();\n    }\n");
+    }
+
+    private void writeParameters(StringBuilder out, ExecutableElement m, ExecutableType t) {
+        List<? extends TypeMirror> params = t.getParameterTypes();
+        for(int p=0; p<params.size(); p++) {
+            if( p > 0 ) {
+                out.append(", ");
+            }
+            String type = params.get(p).toString();
+            if( m.isVarArgs() && p == params.size() - 1 && type.endsWith("[]") ) {
+                type = type.substring(0, type.length() - 2) + "...";
+            }
+            out.append(type).append(" arg").append(p);
+        }
+    }
+
+    private void writeArguments(StringBuilder out, ExecutableElement m) {
+        for(int p=0; p<m.getParameters().size(); p++) {
+            out.append(p > 0 ? ", arg" : "arg").append(p);
+        }
+    }
+
+    private void writeThrows(StringBuilder out, List<? extends TypeMirror> thrown) {
+        String sep = " throws ";
+        for(TypeMirror t : thrown) {
+            out.append(sep).append(t);
+            sep = ", ";
+        }
+    }
+
+    /**
+     * The simple name of the class, with the names of any
+     * enclosing classes in front of it.
+     */
+    private String flatName(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element outer = type.getEnclosingElement();
+        while( outer instanceof TypeElement ) {
+            name = outer.getSimpleName() + "_" + name;
+            outer = outer.getEnclosingElement();
+        }
+        return name;
+    }
+
+    private void error(Element e, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, e);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.adaptershack.duckrabbit.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DelegatesProcessorTest {
+
+	static class Quiet implements Greeter {
+		public String hello(String name) {
+			return "hello " + name;
+		}
+		public String bye() throws IOException {
+			throw new IOException("not leaving");
+		}
+		public int count(String... names) {
+			return names.length;
+		}
+		public <T extends CharSequence> List<T> echo(List<T> in) {
+			return in;
+		}
+	}
+
+	@Test
+	public void testGeneratedDelegator() throws Exception {
+
+		LoudGreeterDelegator delegator = new LoudGreeterDelegator(new Quiet());
+		Greeter g = delegator.getProxy();
+
+		// no proxy involved at all
+		assertSame(delegator, g);
+
+		// our override wins
+		assertEquals("HELLO BOB!", g.hello("bob"));
+
+		// the rest go to the wrapped object
+		assertEquals(3, g.count("a", "b", "c"));
+		assertEquals("hello bob hello bob", g.twice("bob"));
+		List<String> in = Arrays.asList("x");
+		assertSame(in, g.echo(in));
+		try {
+			g.bye();
+			fail();
+		} catch (IOException e) {
+			assertEquals("not leaving", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testWrappedMustImplement() {
+
+		// fine when it does
+		Greeter g = new DuckGreeterDelegator(new Quiet());
+		assertEquals("hi bob", g.hello("bob"));
+		assertEquals(2, g.count("a", "b"));
+
+		// but something that merely looks like one is turned away
+		try {
+			new DuckGreeterDelegator(new Object() {
+				@SuppressWarnings("unused")
+				public int count(String... names) {
+					return names.length;
+				}
+			});
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains(Greeter.class.getName()));
+		}
+	}
+
+	@Test
+	public void testNothingWrapped() {
+
+		Greeter g = new LoudGreeterDelegator().getProxy();
+
+		assertEquals("HELLO BOB!", g.hello("bob"));
+
+		// defaults still work, and call back into us
+		assertEquals("HELLO BOB! HELLO BOB!", g.twice("bob"));
+		try {
+			g.count();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// don't say we didn't warn you
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.adaptershack.duckrabbit.processor;
+
+import com.adaptershack.duckrabbit.Delegates;
+import com.adaptershack.duckrabbit.DynamicDelegator;
+
+@Delegates(Greeter.class)
+public abstract class DuckGreeter extends DynamicDelegator<Object> {
+
+	public DuckGreeter(Object o) {
+		super(o);
+	}
+
+	public String hello(String name) {
+		return "hi " + name;
+	}
+}
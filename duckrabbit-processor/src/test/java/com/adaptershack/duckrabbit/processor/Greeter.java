@@ -0,0 +1,14 @@
+package com.adaptershack.duckrabbit.processor;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface Greeter {
+	String hello(String name);
+	String bye() throws IOException;
+	int count(String... names);
+	<T extends CharSequence> List<T> echo(List<T> in);
+	default String twice(String name) {
+		return hello(name) + " " + hello(name);
+	}
+}
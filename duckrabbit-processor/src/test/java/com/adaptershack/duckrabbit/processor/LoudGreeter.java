@@ -0,0 +1,20 @@
+package com.adaptershack.duckrabbit.processor;
+
+import com.adaptershack.duckrabbit.Delegates;
+import com.adaptershack.duckrabbit.DynamicDelegator;
+
+@Delegates(Greeter.class)
+public abstract class LoudGreeter extends DynamicDelegator<Greeter> {
+
+	public LoudGreeter(Greeter g) {
+		super(g);
+	}
+
+	public LoudGreeter() {
+		super(Greeter.class);
+	}
+
+	public String hello(String name) {
+		return "HELLO " + name.toUpperCase() + "!";
+	}
+}
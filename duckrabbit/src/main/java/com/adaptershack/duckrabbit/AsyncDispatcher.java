@@ -0,0 +1,493 @@
+/*
+ * AsyncDispatcher.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+/**
+ * Runs some of the calls made through a proxy on another thread, so the
+ * caller doesn't have to wait for them. This suits methods like listener
+ * callbacks and audit logging, which return nothing, and methods that
+ * return a future anyway.
+ * <p>
+ * Calls to void methods return as soon as the call has been handed over.
+ * Since there's nobody to throw an exception to, any exception is passed
+ * to the error handler, which by default logs it. Methods that return a
+ * CompletableFuture, CompletionStage or Future get a CompletableFuture
+ * straight away, which completes when the object's own future does. A
+ * plain Future has no way to say when it's done, so unless it already is,
+ * one of the executor's threads waits on it; with a pool of fixed size,
+ * enough slow ones can tie up every thread in it. Any other method that
+ * is selected is called on the caller's thread as usual, since there's no
+ * way to give back its result without waiting for it.
+ * <p>
+ * By default, calls are run on virtual threads when running on a JVM that
+ * has them, or otherwise on a pool with one thread per processor. At most
+ * maxPending calls can be outstanding at once; after that, callers wait
+ * until one finishes, so a slow object can't make the queue grow without
+ * bound. A caller interrupted while waiting gets a
+ * RejectedExecutionException, and is left interrupted. If ordered is set,
+ * calls to each object in each chain are run one at a time in the order
+ * they were made; calls to different objects, or through different
+ * proxies, still run alongside each other.
+ * <p>
+ * drain() waits for all outstanding calls to finish, and shutdown() does
+ * that after refusing any more.
+ *
+ * @see InvocationChain#setAsyncDispatcher(AsyncDispatcher)
+ * @see DynamicDelegator#asyncDispatcher
+ */
+public class AsyncDispatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncDispatcher.class.getName());
+
+    /**
+     * Selects the methods that can usefully be run on another thread:
+     * those that return nothing, and those that return a future.
+     */
+    public static final Predicate<Method> VOID_OR_FUTURE = m ->
+        m.getReturnType() == void.class || isFuture(m.getReturnType());
+
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final Predicate<Method> selector;
+
+    private int maxPending = 1024;
+    private boolean ordered;
+    private Consumer<Throwable> errorHandler =
+        t -> LOGGER.log(Level.WARNING, "asynchronous call failed", t);
+
+    private Semaphore permits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    /**
+     * One queue of calls for each object in each chain that has calls
+     * waiting or running, if ordered is set. A lane is dropped as soon as
+     * it has nothing to do.
+     */
+    private final Map<LaneKey, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Whether each method called so far is run asynchronously. Copied
+     * when added to, as with the dispatch table.
+     */
+    private volatile Map<Method, Boolean> selected = new IdentityHashMap<>();
+
+    /**
+     * Creates a dispatcher for void and future-returning methods,
+     * using the default executor.
+     */
+    public AsyncDispatcher() {
+        this(VOID_OR_FUTURE);
+    }
+
+    /**
+     * Creates a dispatcher for the methods for which the given test is
+     * true, using the default executor. That is virtual threads if this
+     * JVM has them, and otherwise a pool of one thread per processor.
+     */
+    public AsyncDispatcher(Predicate<Method> selector) {
+        this(selector, defaultExecutor(), true);
+    }
+
+    /**
+     * Creates a dispatcher for the methods for which the given test is
+     * true, using the given executor. The executor is not shut down by
+     * shutdown().
+     */
+    public AsyncDispatcher(Predicate<Method> selector, Executor executor) {
+        this(selector, executor, false);
+    }
+
+    private AsyncDispatcher(Predicate<Method> selector, Executor executor, boolean ownsExecutor) {
+        this.selector = selector;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Sets the most calls that can be outstanding at once, after which
+     * callers wait. The default is 1024. This must be done before any
+     * proxy that uses this dispatcher is called.
+     */
+    public synchronized AsyncDispatcher maxPending(int maxPending) {
+        if( maxPending <= 0 ) {
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        this.maxPending = maxPending;
+        return this;
+    }
+
+    /**
+     * Sets whether calls to each object in a chain are run one at a
+     * time, in the order they were made. The default is not to, so calls
+     * may run concurrently and finish in any order.
+     */
+    public synchronized AsyncDispatcher ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * Sets what is done with exceptions thrown by void methods. The
+     * default is to log them.
+     */
+    public synchronized AsyncDispatcher onError(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /** The number of calls handed over that haven't finished yet. */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /** The number of lanes with calls waiting or running, if ordered is set. */
+    int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * Waits for all outstanding calls to finish.
+     * @return true if they did, or false if the time ran out first
+     */
+    public boolean drain(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized(pending) {
+            while( pending.get() > 0 ) {
+                long left = deadline - System.nanoTime();
+                if( left <= 0 ) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pending, left);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refuses any more calls, which will throw RejectedExecutionException,
+     * then waits for outstanding ones to finish. The default executor is
+     * then shut down; one that was passed in is left alone.
+     * @return true if all calls finished, or false if the time ran out first
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        shutdown = true;
+        boolean drained = drain(timeout, unit);
+        if( ownsExecutor ) {
+            ((ExecutorService) executor).shutdown();
+        }
+        return drained;
+    }
+
+    /**
+     * Shuts down, waiting as long as it takes for outstanding calls. If
+     * the thread is interrupted meanwhile, it goes on waiting, and is left
+     * interrupted afterwards.
+     */
+    public void close() {
+        boolean interrupted = false;
+        for(;;) {
+            try {
+                shutdown(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes a call that came through a proxy, on another thread if
+     * the method is one of those selected.
+     */
+    Object invoke(InvocationChain chain, Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        Boolean async = selected.get(method);
+        if( async == null ) {
+            async = resolve(method);
+        }
+        if( !async || dispatch.index < 0 ) {
+            return chain.invokeNow(dispatch, method, args);
+        }
+
+        if( shutdown ) {
+            throw new RejectedExecutionException("this dispatcher has been shut down");
+        }
+        acquire();
+        Executor target = executor;
+        if( ordered ) {
+            target = laneFor(chain, dispatch.index);
+        }
+
+        if( method.getReturnType() == void.class ) {
+            submit(target, () -> {
+                try {
+                    chain.invokeNow(dispatch, method, args);
+                } catch (Throwable t) {
+                    errorHandler.accept(t);
+                } finally {
+                    release();
+                }
+            });
+            return null;
+        }
+
+        // the permit is given back when the object is done, not when the
+        // caller's future is, which the caller can complete or cancel
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        submit(target, () -> {
+            boolean later = false;
+            try {
+                Object r = chain.invokeNow(dispatch, method, args);
+                if( r instanceof CompletionStage ) {
+                    later = true;
+                    ((CompletionStage<?>) r).whenComplete((v, t) -> {
+                        release();
+                        if( t != null ) {
+                            result.completeExceptionally(t);
+                        } else {
+                            result.complete(v);
+                        }
+                    });
+                } else if( r instanceof Future ) {
+                    // nothing to be told by, so wait for it here
+                    result.complete(((Future<?>) r).get());
+                } else {
+                    result.complete(r);
+                }
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                if( !later ) {
+                    release();
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns an executor that runs one task in the lane for the given
+     * object in the given chain, making the lane if there isn't one, and
+     * dropping it once it has run everything it was given.
+     */
+    private Executor laneFor(InvocationChain chain, int index) {
+        LaneKey key = new LaneKey(chain, index);
+        Lane lane = lanes.compute(key, (k, l) -> {
+            if( l == null ) {
+                l = new Lane(executor);
+            }
+            l.users++;
+            return l;
+        });
+        Runnable done = () -> lanes.computeIfPresent(key, (k, l) -> --l.users == 0 ? null : l);
+        return task -> {
+            try {
+                lane.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        done.run();
+                    }
+                });
+            } catch (RuntimeException | Error e) {
+                done.run();
+                throw e;
+            }
+        };
+    }
+
+    private void submit(Executor target, Runnable task) {
+        try {
+            target.execute(task);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    private void acquire() {
+        Semaphore p = permits;
+        if( p == null ) {
+            synchronized(this) {
+                if( permits == null ) {
+                    permits = new Semaphore(maxPending);
+                }
+                p = permits;
+            }
+        }
+        try {
+            p.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted while waiting for room for another call");
+        }
+        pending.incrementAndGet();
+    }
+
+    private void release() {
+        int left = pending.decrementAndGet();
+        permits.release();
+        if( left == 0 ) {
+            synchronized(pending) {
+                pending.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Works out, once, whether a method is run asynchronously.
+     */
+    private synchronized Boolean resolve(Method method) {
+        Boolean async = selected.get(method);
+        if( async != null ) {
+            return async;
+        }
+        Class<?> r = method.getReturnType();
+        async = ( r == void.class || isFuture(r) ) && selector.test(method);
+        Map<Method, Boolean> table = new IdentityHashMap<>(selected);
+        table.put(method, async);
+        selected = table;
+        return async;
+    }
+
+    private static boolean isFuture(Class<?> c) {
+        return c == CompletableFuture.class || c == CompletionStage.class || c == Future.class;
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread, or
+     * on Java versions that don't have them, a pool of daemon threads, one
+     * per processor.
+     */
+    static ExecutorService defaultExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // before Java 21
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "duckrabbit-async-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Names the lane of one object in one chain.
+     */
+    private static final class LaneKey {
+        private final InvocationChain chain;
+        private final int index;
+
+        LaneKey(InvocationChain chain, int index) {
+            this.chain = chain;
+            this.index = index;
+        }
+
+        public boolean equals(Object o) {
+            if( !(o instanceof LaneKey) ) {
+                return false;
+            }
+            LaneKey other = (LaneKey) o;
+            return chain == other.chain && index == other.index;
+        }
+
+        public int hashCode() {
+            return 31 * System.identityHashCode(chain) + index;
+        }
+    }
+
+    /**
+     * Runs tasks one at a time, in the order they were given, on
+     * another executor.
+     */
+    static final class Lane implements Executor {
+        private final Executor executor;
+        /** Tasks given to this lane that haven't finished, counted in the lanes map. */
+        int users;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        Lane(Executor executor) {
+            this.executor = executor;
+        }
+
+        public void execute(Runnable task) {
+            tasks.add(task);
+            try {
+                schedule();
+            } catch (RuntimeException | Error e) {
+                tasks.remove(task);
+                throw e;
+            }
+        }
+
+        private void schedule() {
+            if( !tasks.isEmpty() && running.compareAndSet(false, true) ) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RuntimeException | Error e) {
+                    running.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Runnable task;
+                while( (task = tasks.poll()) != null ) {
+                    task.run();
+                }
+            } finally {
+                running.set(false);
+                schedule();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Broadcaster.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Predicate;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+/**
+ * Makes a chain call every object that has a method, rather than just the
+ * first. This is for putting a number of listeners or replicas behind a
+ * single interface.
+ * <p>
+ * What the proxy returns is worked out from all the results by a Reducer.
+ * The default returns the first result that isn't null, in chain order;
+ * there are others here for returning whether all or any of the results
+ * were true, or a List of all of them, and you can write your own. A
+ * reducer can be set for all methods, or for just the methods that some
+ * test picks out.
+ * <p>
+ * Normally the objects are called one after the other, on the caller's
+ * thread. Given an Executor, all but the first are called on that, and
+ * the first on the caller's thread, so that a call takes about as long as
+ * the slowest object rather than all of them added together. Either way,
+ * every object is called even if some throw, and if any did, the first
+ * exception is thrown, with the others added to it as suppressed.
+ *
+ * @see InvocationChain#setBroadcaster(Broadcaster)
+ */
+public class Broadcaster {
+
+    /**
+     * Combines the results of calling a method on every object into
+     * the one result that the proxy returns. The results are in chain
+     * order, and are null for void methods.
+     */
+    public interface Reducer {
+        Object reduce(Method method, List<Object> results);
+    }
+
+    /** Returns the first result that isn't null, or null if there isn't one. */
+    public static final Reducer FIRST_NON_NULL = (method, results) -> {
+        for(Object r : results) {
+            if( r != null ) {
+                return r;
+            }
+        }
+        return null;
+    };
+
+    /** Returns true if every result was true. */
+    public static final Reducer ALL_TRUE = (method, results) -> {
+        for(Object r : results) {
+            if( !Boolean.TRUE.equals(r) ) {
+                return false;
+            }
+        }
+        return true;
+    };
+
+    /** Returns true if any result was true. */
+    public static final Reducer ANY_TRUE = (method, results) -> results.contains(Boolean.TRUE);
+
+    /** Returns a List of all the results, for methods that return a List or Collection. */
+    public static final Reducer TO_LIST = (method, results) -> results;
+
+    private final Executor executor;
+    private Reducer defaultReducer = FIRST_NON_NULL;
+    private final List<Predicate<Method>> selectors = new ArrayList<>();
+    private final List<Reducer> reducers = new ArrayList<>();
+
+    /**
+     * The reducer for each method called so far. Copied when added to,
+     * as with the dispatch table.
+     */
+    private volatile Map<Method, Reducer> resolved = new IdentityHashMap<>();
+
+    /**
+     * Creates a broadcaster that calls each object in turn, on
+     * the caller's thread.
+     */
+    public Broadcaster() {
+        this(null);
+    }
+
+    /**
+     * Creates a broadcaster that calls the objects at the same time,
+     * using the given executor for all but the first.
+     */
+    public Broadcaster(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a broadcaster that calls the objects at the same time,
+     * using the common ForkJoinPool. Calls made from one of that pool's
+     * own threads, as in a parallel stream, are fine: while the caller
+     * waits for the others, the pool is told it is blocked, and can start
+     * another thread to make up for it.
+     */
+    public static Broadcaster parallel() {
+        return new Broadcaster(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sets the reducer for methods that no other reducer has been given
+     * for. This must be done before any proxy that uses this broadcaster
+     * is called.
+     */
+    public synchronized Broadcaster reduceWith(Reducer reducer) {
+        defaultReducer = reducer;
+        return this;
+    }
+
+    /**
+     * Sets the reducer for methods for which the given test is true. This
+     * must be done before any proxy that uses this broadcaster is called.
+     */
+    public synchronized Broadcaster reduceWith(Predicate<Method> selector, Reducer reducer) {
+        selectors.add(selector);
+        reducers.add(reducer);
+        return this;
+    }
+
+    /**
+     * Makes a proxy that implements the given interface, and any others
+     * the targets implement, by calling every target that has the method.
+     */
+    public <T> T newProxy(Class<T> mainInterface, Object... targets) {
+        InvocationChain chain = new InvocationChain(targets);
+        chain.addInterface(mainInterface);
+        chain.setBroadcaster(this);
+        return mainInterface.cast(chain.newProxyInstance());
+    }
+
+    /**
+     * Makes a call that came through a proxy, on every link that
+     * has the method.
+     */
+    Object invoke(InvocationChain chain, Method method, Object[] args) throws Throwable {
+        Dispatch[] all = chain.dispatchAll(method);
+        Object[] results = new Object[all.length];
+        Throwable[] thrown = new Throwable[all.length];
+
+        if( executor == null || all.length == 1 ) {
+            for(int i=0; i<all.length; i++) {
+                run(chain, all[i], args, results, thrown, i);
+            }
+        } else {
+            CountDownLatch done = new CountDownLatch(all.length - 1);
+            for(int i=1; i<all.length; i++) {
+                int n = i;
+                Runnable task = () -> {
+                    try {
+                        run(chain, all[n], args, results, thrown, n);
+                    } finally {
+                        done.countDown();
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+            run(chain, all[0], args, results, thrown, 0);
+            awaitUninterruptibly(done);
+        }
+
+        Throwable first = null;
+        for(Throwable t : thrown) {
+            if( t == null ) {
+                continue;
+            }
+            if( first == null ) {
+                first = t;
+            } else if( t != first ) {
+                first.addSuppressed(t);
+            }
+        }
+        if( first != null ) {
+            throw first;
+        }
+
+        Reducer reducer = resolved.get(method);
+        if( reducer == null ) {
+            reducer = resolve(method);
+        }
+        return reducer.reduce(method, Arrays.asList(results));
+    }
+
+    private static void run(InvocationChain chain, Dispatch dispatch, Object[] args,
+            Object[] results, Throwable[] thrown, int i) {
+        try {
+            results[i] = dispatch.invoker.invoke(chain.getDelegate(dispatch.index), args);
+        } catch (Throwable t) {
+            thrown[i] = t;
+        }
+    }
+
+    /**
+     * Waits for the latch, as a ForkJoinPool managed block, so that if this
+     * is one of a pool's threads, the pool doesn't run short of threads to
+     * run the very tasks being waited for. On any other thread it's just
+     * an ordinary wait.
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        ForkJoinPool.ManagedBlocker blocker = new ForkJoinPool.ManagedBlocker() {
+            public boolean block() throws InterruptedException {
+                latch.await();
+                return true;
+            }
+            public boolean isReleasable() {
+                return latch.getCount() == 0;
+            }
+        };
+        boolean interrupted = false;
+        for(;;) {
+            try {
+                ForkJoinPool.managedBlock(blocker);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized Reducer resolve(Method method) {
+        Reducer reducer = resolved.get(method);
+        if( reducer != null ) {
+            return reducer;
+        }
+        reducer = defaultReducer;
+        for(int i=0; i<selectors.size(); i++) {
+            if( selectors.get(i).test(method) ) {
+                reducer = reducers.get(i);
+                break;
+            }
+        }
+        Map<Method, Reducer> table = new IdentityHashMap<>(resolved);
+        table.put(method, reducer);
+        resolved = table;
+        return reducer;
+    }
+
+}
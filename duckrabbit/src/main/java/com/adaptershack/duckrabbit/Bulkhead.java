@@ -0,0 +1,348 @@
+/*
+ * Bulkhead.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+/**
+ * Limits how many calls can be in progress at once on the objects behind
+ * a proxy. When something like a database starts to struggle, its calls
+ * get slow, and without a limit every thread that uses it ends up stuck
+ * waiting on it; with one, only so many are, and the rest find out
+ * straight away (or after a short wait) that it's busy, with a
+ * RejectedExecutionException.
+ * <p>
+ * Every method shares one limit, unless group() gives some methods a limit
+ * of their own, so that, say, slow queries can't use up the calls that
+ * commits need. A Bulkhead given to several proxies limits them all
+ * together; to limit each proxy on its own, give each its own Bulkhead.
+ * <p>
+ * By default a call that finds no room is rejected at once. With maxWait()
+ * it waits up to that long, in line behind any others already waiting,
+ * for a call to finish, and is rejected if none has by then.
+ * <p>
+ * Calls answered from a ResultCache, and calls to methods nothing in the
+ * chain has, don't count toward the limit.
+ *
+ * @see InvocationChain#setBulkhead(Bulkhead)
+ * @see DynamicDelegator#bulkhead
+ */
+public class Bulkhead {
+
+    private final Compartment shared;
+    private final List<Compartment> groups = new ArrayList<>();
+    private final List<Predicate<Method>> selectors = new ArrayList<>();
+
+    private volatile long maxWaitNanos;
+    private volatile int maxWaiting = Integer.MAX_VALUE;
+
+    /**
+     * The compartment each method called so far is limited by. Copied
+     * when added to, as with the dispatch table.
+     */
+    private volatile Map<Method, Compartment> compartments = new IdentityHashMap<>();
+
+    /**
+     * Creates a bulkhead that lets at most the given number of calls be
+     * in progress at once.
+     */
+    public Bulkhead(int maxConcurrent) {
+        this.shared = new Compartment("*", checkLimit(maxConcurrent));
+    }
+
+    /**
+     * Gives the methods for which the given test is true a limit of their
+     * own, apart from the one the other methods share. A method goes in
+     * the first group that selects it. This must be done before any proxy
+     * that uses this bulkhead is called.
+     * @param name what the group is called in getCompartments()
+     */
+    public synchronized Bulkhead group(String name, Predicate<Method> selector, int maxConcurrent) {
+        groups.add(new Compartment(name, checkLimit(maxConcurrent)));
+        selectors.add(selector);
+        compartments = new IdentityHashMap<>();
+        return this;
+    }
+
+    /**
+     * Sets how long a call waits for room before being rejected. The
+     * default is zero, which rejects calls as soon as there's no room.
+     */
+    public synchronized Bulkhead maxWait(long timeout, TimeUnit unit) {
+        if( timeout < 0 ) {
+            throw new IllegalArgumentException("timeout must not be negative");
+        }
+        this.maxWaitNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Sets how many calls can be waiting for room in each compartment,
+     * after which more are rejected without waiting. The default is no
+     * limit. This only matters if maxWait has been set.
+     */
+    public synchronized Bulkhead maxWaiting(int maxWaiting) {
+        if( maxWaiting < 0 ) {
+            throw new IllegalArgumentException("maxWaiting must not be negative");
+        }
+        this.maxWaiting = maxWaiting;
+        return this;
+    }
+
+    /**
+     * Returns the compartments, each with its own limit and counts: the
+     * one shared by methods in no group, named "*", then the groups in
+     * the order they were added.
+     */
+    public synchronized List<Compartment> getCompartments() {
+        List<Compartment> all = new ArrayList<>();
+        all.add(shared);
+        all.addAll(groups);
+        return Collections.unmodifiableList(all);
+    }
+
+    /** The number of calls in progress now, in all compartments. */
+    public int getInFlight() {
+        int n = 0;
+        for(Compartment c : getCompartments()) {
+            n += c.getInFlight();
+        }
+        return n;
+    }
+
+    /** The number of calls rejected so far, in all compartments. */
+    public long getRejected() {
+        long n = 0;
+        for(Compartment c : getCompartments()) {
+            n += c.getRejected();
+        }
+        return n;
+    }
+
+    /**
+     * Makes a call that came through a proxy, if there's room for it.
+     */
+    Object invoke(InvocationChain chain, Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        Compartment c = compartments.get(method);
+        if( c == null ) {
+            c = resolve(method);
+        }
+        c.acquire(maxWaitNanos, maxWaiting);
+        try {
+            return chain.callLinks(dispatch, method, args);
+        } finally {
+            c.release();
+        }
+    }
+
+    /**
+     * Works out, once, which compartment a method is limited by.
+     */
+    private synchronized Compartment resolve(Method method) {
+        Compartment c = compartments.get(method);
+        if( c != null ) {
+            return c;
+        }
+        c = shared;
+        for(int i=0; i<groups.size(); i++) {
+            if( selectors.get(i).test(method) ) {
+                c = groups.get(i);
+                break;
+            }
+        }
+        Map<Method, Compartment> table = new IdentityHashMap<>(compartments);
+        table.put(method, c);
+        compartments = table;
+        return c;
+    }
+
+    private static int checkLimit(int maxConcurrent) {
+        if( maxConcurrent <= 0 ) {
+            throw new IllegalArgumentException("maxConcurrent must be positive");
+        }
+        return maxConcurrent;
+    }
+
+    /**
+     * One limit on the number of calls in progress, and the methods that
+     * share it. The count is kept without locking; callers that have to
+     * wait are parked in a queue, and the one at its head is woken each
+     * time a call finishes.
+     */
+    public static final class Compartment {
+        private final String name;
+        private final int maxConcurrent;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peak = new AtomicInteger();
+        private final AtomicInteger waitingCount = new AtomicInteger();
+        private final Queue<Thread> waiting = new ConcurrentLinkedQueue<>();
+
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder waited = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        Compartment(String name, int maxConcurrent) {
+            this.name = name;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** The most calls that can be in progress at once. */
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        /** The number of calls in progress now. */
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /** The most calls that have been in progress at once. */
+        public int getPeakInFlight() {
+            return peak.get();
+        }
+
+        /** The number of calls waiting for room now. */
+        public int getWaiting() {
+            return waitingCount.get();
+        }
+
+        /**
+         * How full the compartment is now, from 0 to 1, or more than 1
+         * if calls are waiting.
+         */
+        public double getSaturation() {
+            return (double) (inFlight.get() + waitingCount.get()) / maxConcurrent;
+        }
+
+        /** The number of calls let through so far. */
+        public long getAdmitted() {
+            return admitted.sum();
+        }
+
+        /** The number of calls rejected so far, whether or not they waited first. */
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /** The number of calls that had to wait, whether or not they got through. */
+        public long getWaited() {
+            return waited.sum();
+        }
+
+        /** The total time calls have spent waiting, in nanoseconds. */
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+
+        public String toString() {
+            return name + ": " + inFlight.get() + "/" + maxConcurrent + " in flight, "
+                + waitingCount.get() + " waiting, " + rejected.sum() + " rejected";
+        }
+
+        /**
+         * Takes a place, waiting until the given time has passed if there
+         * isn't one.
+         * @throws RejectedExecutionException if there's still no room, or
+         *         the thread was interrupted while waiting
+         */
+        void acquire(long maxWaitNanos, int maxWaiting) {
+            if( waiting.isEmpty() && tryAcquire() ) {
+                return;
+            }
+            if( maxWaitNanos == 0 || waitingCount.get() >= maxWaiting ) {
+                throw reject();
+            }
+
+            waited.increment();
+            long start = System.nanoTime();
+            long deadline = start + maxWaitNanos;
+            Thread me = Thread.currentThread();
+            waitingCount.incrementAndGet();
+            waiting.add(me);
+            try {
+                for(;;) {
+                    // first come, first served
+                    if( waiting.peek() == me && tryAcquire() ) {
+                        return;
+                    }
+                    long left = deadline - System.nanoTime();
+                    if( left <= 0 ) {
+                        throw reject();
+                    }
+                    LockSupport.parkNanos(this, left);
+                    if( Thread.interrupted() ) {
+                        me.interrupt();
+                        throw reject();
+                    }
+                }
+            } finally {
+                waiting.remove(me);
+                waitingCount.decrementAndGet();
+                waitNanos.add(System.nanoTime() - start);
+                // if this thread was next in line, the one after it is now
+                wakeNext();
+            }
+        }
+
+        private boolean tryAcquire() {
+            for(;;) {
+                int n = inFlight.get();
+                if( n >= maxConcurrent ) {
+                    return false;
+                }
+                if( inFlight.compareAndSet(n, n + 1) ) {
+                    admitted.increment();
+                    int p = peak.get();
+                    while( n + 1 > p && !peak.compareAndSet(p, n + 1) ) {
+                        p = peak.get();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            inFlight.decrementAndGet();
+            wakeNext();
+        }
+
+        private void wakeNext() {
+            Thread next = waiting.peek();
+            if( next != null ) {
+                LockSupport.unpark(next);
+            }
+        }
+
+        private RejectedExecutionException reject() {
+            rejected.increment();
+            return new RejectedExecutionException("bulkhead " + name + " is full: "
+                + inFlight.get() + " of " + maxConcurrent + " calls in progress");
+        }
+    }
+
+}
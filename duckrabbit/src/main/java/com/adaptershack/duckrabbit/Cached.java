@@ -0,0 +1,50 @@
+/*
+ * Cached.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface method whose results may be remembered by a proxy
+ * that has a ResultCache. The method should always return the same thing
+ * for the same arguments, at least until a method marked InvalidatesCache
+ * is called. For example:
+ * <pre>
+ *   public interface PriceList {
+ *
+ *       &#64;Cached(maxSize = 10000, ttlMillis = 60000)
+ *       BigDecimal priceOf(String sku);
+ *
+ *       &#64;InvalidatesCache
+ *       void reprice(String sku, BigDecimal price);
+ *   }
+ * </pre>
+ *
+ * @see ResultCache
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+
+    /**
+     * The most results to remember. Once there are this many, the one
+     * that was used least recently is forgotten to make room.
+     */
+    int maxSize() default 1000;
+
+    /**
+     * How long a result is remembered for, in milliseconds. Zero
+     * means until it is evicted or invalidated.
+     */
+    long ttlMillis() default 0;
+
+}
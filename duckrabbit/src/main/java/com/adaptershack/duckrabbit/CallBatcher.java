@@ -0,0 +1,427 @@
+/*
+ * CallBatcher.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+/**
+ * Holds back calls to some of the void methods of a proxy, and passes
+ * them on to the object behind it in batches. This helps with things like
+ * metric emitters and message producers, where most of the cost of a call
+ * is the same however much it carries.
+ * <p>
+ * Calls are queued without locking, and sent on when maxBatch of them
+ * have built up, or maxDelay after the first of them was queued, whichever
+ * comes first. They are sent either by calling the method once for each
+ * call, one after the other, or, if a Bulk was given for the method, by
+ * handing all of them over to that in one go. A call to any method that
+ * isn't batched sends everything queued first, so that, for example,
+ * Statement.executeBatch sees every addBatch that came before it.
+ * <p>
+ * A batch whose time is up is sent on a thread of the batcher's own, or
+ * by the executor given to flushOn, never on the timer that all batchers
+ * share, so a slow object behind one batcher doesn't hold up any other.
+ * <p>
+ * Batches go on through the rest of the chain just as calls that weren't
+ * held back do, so an AsyncDispatcher, ResultCache or Bulkhead on the same
+ * chain applies to them too; a Bulk counts as one call. On a chain with a
+ * Broadcaster, calls are always replayed, since a Bulk has only one target.
+ * <p>
+ * Since a batched call has returned long before it is really made, any
+ * exception it throws is passed to the error handler, which by default
+ * logs it. flush() sends everything queued right away; close() does that
+ * and stops batching, so calls after it go straight through.
+ *
+ * @see InvocationChain#setCallBatcher(CallBatcher)
+ * @see DynamicDelegator#callBatcher
+ */
+public class CallBatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CallBatcher.class.getName());
+
+    /**
+     * Tells batchers when their time is up, for all of them. It only
+     * hands the flush to the batcher's own executor, so that nothing
+     * behind a batcher ever runs on it.
+     */
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    /**
+     * Sends a batch of calls to the same method of the same object.
+     */
+    public interface Bulk {
+        /**
+         * Does the work of calling the method on the target once for
+         * each of the given argument lists, in order.
+         */
+        void call(Object target, List<Object[]> calls) throws Throwable;
+    }
+
+    private final int maxBatch;
+    private final long maxDelayNanos;
+
+    private final List<Predicate<Method>> replayed = new ArrayList<>();
+    private final List<Predicate<Method>> bulkSelectors = new ArrayList<>();
+    private final List<Bulk> bulks = new ArrayList<>();
+    private Consumer<Throwable> errorHandler =
+        t -> LOGGER.log(Level.WARNING, "batched call failed", t);
+
+    /** Sends batches whose time is up. */
+    private volatile Executor flusher = newFlusher();
+
+    /**
+     * How each method called so far is batched: UNBATCHED if it isn't,
+     * REPLAY if it is replayed, or its Bulk. Copied when added to, as
+     * with the dispatch table.
+     */
+    private volatile Map<Method, Object> batched = new IdentityHashMap<>();
+
+    private static final Object REPLAY = new Object();
+    private static final Object UNBATCHED = new Object();
+
+    private final Queue<Call> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ReentrantLock flushing = new ReentrantLock();
+    private final AtomicBoolean timerSet = new AtomicBoolean();
+    private volatile ScheduledFuture<?> timer;
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedCalls = new LongAdder();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    /**
+     * Creates a batcher that sends calls on once maxBatch of them have
+     * built up, or maxDelay after the first was held back. Until methods
+     * are chosen with batch(), no calls are batched.
+     */
+    public CallBatcher(int maxBatch, long maxDelay, TimeUnit unit) {
+        if( maxBatch <= 0 ) {
+            throw new IllegalArgumentException("maxBatch must be positive");
+        }
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Batches the void methods for which the given test is true, sending
+     * the calls on by making them one after the other. This must be done
+     * before any proxy that uses this batcher is called.
+     */
+    public synchronized CallBatcher batch(Predicate<Method> selector) {
+        replayed.add(selector);
+        return this;
+    }
+
+    /**
+     * Batches the void methods for which the given test is true, sending
+     * the calls on by handing them to the given Bulk. This must be done
+     * before any proxy that uses this batcher is called.
+     */
+    public synchronized CallBatcher batch(Predicate<Method> selector, Bulk bulk) {
+        bulkSelectors.add(selector);
+        bulks.add(bulk);
+        return this;
+    }
+
+    /**
+     * Sets what is done with exceptions thrown by batched calls. The
+     * default is to log them.
+     */
+    public synchronized CallBatcher onError(Consumer<Throwable> errorHandler) {
+        this.errorHandler = errorHandler;
+        return this;
+    }
+
+    /**
+     * Sets the executor that sends batches whose time is up. The default
+     * is a thread of this batcher's own, which goes away when idle.
+     */
+    public synchronized CallBatcher flushOn(Executor executor) {
+        this.flusher = executor;
+        return this;
+    }
+
+    /** The number of batches sent so far. */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /** The number of calls sent in batches so far. */
+    public long getBatchedCalls() {
+        return batchedCalls.sum();
+    }
+
+    /** The number of calls in the largest batch sent so far. */
+    public int getLargestBatch() {
+        return largestBatch.get();
+    }
+
+    /** The average number of calls in a batch. */
+    public double getMeanBatchSize() {
+        long b = batches.sum();
+        return b == 0 ? 0 : (double) batchedCalls.sum() / b;
+    }
+
+    /** The number of calls held back and not yet sent. */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Sends every call held back so far, and waits for them to be made.
+     */
+    public void flush() {
+        flushing.lock();
+        try {
+            drain(false);
+        } finally {
+            flushing.unlock();
+        }
+        drainFull();
+        setTimer();
+    }
+
+    /**
+     * Sends every call held back, and stops batching; calls made after
+     * this go straight to the object.
+     */
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> t = timer;
+        if( t != null ) {
+            t.cancel(false);
+        }
+        flush();
+    }
+
+    /**
+     * Makes a call that came through a proxy, or holds it back if the
+     * method is batched.
+     */
+    Object invoke(InvocationChain chain, Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        Object how = batched.get(method);
+        if( how == null ) {
+            how = resolve(method);
+        }
+        if( how == UNBATCHED || closed || dispatch.index < 0 ) {
+            if( queued.get() > 0 ) {
+                flush();
+            }
+            return chain.submit(dispatch, method, args);
+        }
+
+        queue.add(new Call(chain, dispatch, method, args == null ? null : args.clone(), how));
+        queued.incrementAndGet();
+        drainFull();
+        if( closed ) {
+            // closed while this call was being queued
+            flush();
+        }
+        setTimer();
+        return null;
+    }
+
+    /**
+     * Makes sure that anything left in the queue will be sent within
+     * maxDelay, by setting the timer if it isn't already set.
+     */
+    private void setTimer() {
+        if( maxDelayNanos > 0 && !closed && queued.get() > 0 && timerSet.compareAndSet(false, true) ) {
+            timer = TIMER.schedule(() -> {
+                timerSet.set(false);
+                try {
+                    flusher.execute(this::flush);
+                } catch (RejectedExecutionException e) {
+                    errorHandler.accept(e);
+                }
+            }, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Sends full batches, if nobody else is already sending. Whoever is
+     * looks again once they've let go of the lock, in case calls were
+     * queued after they last looked but before they let go, when nobody
+     * else could have sent them.
+     */
+    private void drainFull() {
+        while( queued.get() >= maxBatch && flushing.tryLock() ) {
+            try {
+                drain(true);
+            } finally {
+                flushing.unlock();
+            }
+        }
+    }
+
+    /**
+     * Takes calls off the queue and makes them, a batch at a time. If
+     * onlyFull is set, stops when there isn't a full batch left. The
+     * caller must hold the flushing lock.
+     */
+    private void drain(boolean onlyFull) {
+        List<Call> batch = new ArrayList<>();
+        while( onlyFull ? queued.get() >= maxBatch : queued.get() > 0 ) {
+            Call c;
+            while( batch.size() < maxBatch && (c = queue.poll()) != null ) {
+                queued.decrementAndGet();
+                batch.add(c);
+            }
+            if( batch.isEmpty() ) {
+                break;
+            }
+            send(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Makes a batch of calls, in order, handing runs of calls to the same
+     * method of the same object through the same chain to its Bulk if it
+     * has one.
+     */
+    private void send(List<Call> batch) {
+        batches.increment();
+        batchedCalls.add(batch.size());
+        int largest;
+        while( (largest = largestBatch.get()) < batch.size() ) {
+            if( largestBatch.compareAndSet(largest, batch.size()) ) {
+                break;
+            }
+        }
+
+        int i = 0;
+        while( i < batch.size() ) {
+            Call first = batch.get(i);
+            if( first.how == REPLAY || first.chain.getBroadcaster() != null ) {
+                try {
+                    first.chain.submit(first.dispatch, first.method, first.args);
+                } catch (Throwable t) {
+                    errorHandler.accept(t);
+                }
+                i++;
+                continue;
+            }
+            Object target = first.chain.getDelegate(first.dispatch.index);
+            List<Object[]> run = new ArrayList<>();
+            while( i < batch.size() ) {
+                Call c = batch.get(i);
+                if( c.how != first.how || c.method != first.method || c.chain != first.chain
+                        || c.chain.getDelegate(c.dispatch.index) != target ) {
+                    break;
+                }
+                run.add(c.args);
+                i++;
+            }
+            Bulk bulk = (Bulk) first.how;
+            Dispatch all = new Dispatch(first.dispatch.index, first.dispatch.method, new Invoker() {
+                Object invoke(Object t, Object[] args) throws Throwable {
+                    bulk.call(t, run);
+                    return null;
+                }
+            });
+            try {
+                first.chain.submit(all, first.method, null);
+            } catch (Throwable t) {
+                errorHandler.accept(t);
+            }
+        }
+    }
+
+    /**
+     * Works out, once, whether and how a method is batched.
+     */
+    private synchronized Object resolve(Method method) {
+        Object how = batched.get(method);
+        if( how != null ) {
+            return how;
+        }
+        how = UNBATCHED;
+        if( method.getReturnType() == void.class ) {
+            for(int i=0; i<bulkSelectors.size() && how == UNBATCHED; i++) {
+                if( bulkSelectors.get(i).test(method) ) {
+                    how = bulks.get(i);
+                }
+            }
+            for(Predicate<Method> p : replayed) {
+                if( how == UNBATCHED && p.test(method) ) {
+                    how = REPLAY;
+                }
+            }
+        }
+        Map<Method, Object> table = new IdentityHashMap<>(batched);
+        table.put(method, how);
+        batched = table;
+        return how;
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "duckrabbit-batch-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    private static Executor newFlusher() {
+        ThreadPoolExecutor flusher = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "duckrabbit-batch-flush");
+                t.setDaemon(true);
+                return t;
+            });
+        flusher.allowCoreThreadTimeOut(true);
+        return flusher;
+    }
+
+    /**
+     * A call that has been held back.
+     */
+    private static final class Call {
+        final InvocationChain chain;
+        final Dispatch dispatch;
+        final Method method;
+        final Object[] args;
+        final Object how;
+
+        Call(InvocationChain chain, Dispatch dispatch, Method method, Object[] args, Object how) {
+            this.chain = chain;
+            this.dispatch = dispatch;
+            this.method = method;
+            this.args = args;
+            this.how = how;
+        }
+    }
+
+}
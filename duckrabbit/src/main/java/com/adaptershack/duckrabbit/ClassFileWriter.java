@@ -0,0 +1,349 @@
+/*
+ * ClassFileWriter.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough of a class file writer to produce the straight-line
+ * classes made by GeneratedProxyEngine. There is no support for
+ * branches, so no stack map frames are ever needed, and the caller
+ * is responsible for supplying max stack and max locals.
+ *
+ * @see GeneratedProxyEngine
+ */
+final class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int FLOAD = 0x17;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IRETURN = 0xac;
+    static final int LRETURN = 0xad;
+    static final int FRETURN = 0xae;
+    static final int DRETURN = 0xaf;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+
+    /** Java 8 */
+    private static final int VERSION = 52;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    /**
+     * Starts a public final class. All names are internal names,
+     * that is, with slashes instead of dots.
+     */
+    ClassFileWriter(String name, String superName, String[] interfaceNames) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+        interfaces = new int[interfaceNames.length];
+        for(int i=0; i<interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Starts a method. Instructions are added to the returned Code,
+     * which is written out when the class is.
+     */
+    Code method(int access, String name, String descriptor, int maxStack, int maxLocals) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), maxStack, maxLocals);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            // the code attribute's name has to be in the pool
+            // before the pool itself is written out
+            int codeName = utf8("Code");
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for(int i : interfaces) {
+                out.writeShort(i);
+            }
+            out.writeShort(fields.size());
+            for(byte[] f : fields) {
+                out.write(f);
+            }
+            out.writeShort(methods.size());
+            for(Code m : methods) {
+                m.writeTo(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int utf8(String s) {
+        String key = "U" + s;
+        Integer index = poolIndex.get(key);
+        if( index == null ) {
+            try {
+                poolOut.writeByte(1);
+                poolOut.writeUTF(s);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = poolCount++;
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    int classRef(String internalName) {
+        return ref(7, "C" + internalName, utf8(internalName), -1);
+    }
+
+    int string(String s) {
+        return ref(8, "S" + s, utf8(s), -1);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return member(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return member(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return member(11, owner, name, descriptor);
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int nameAndType = ref(12, "N" + name + " " + descriptor, utf8(name), utf8(descriptor));
+        return ref(tag, tag + owner + "." + name + descriptor, classRef(owner), nameAndType);
+    }
+
+    private int ref(int tag, String key, int a, int b) {
+        Integer index = poolIndex.get(key);
+        if( index == null ) {
+            try {
+                poolOut.writeByte(tag);
+                poolOut.writeShort(a);
+                if( b >= 0 ) {
+                    poolOut.writeShort(b);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = poolCount++;
+            poolIndex.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the descriptor for a type, for example I or Ljava/lang/String;
+     */
+    static String descriptor(Class<?> c) {
+        if( c.isPrimitive() ) {
+            if( c == int.class ) return "I";
+            if( c == long.class ) return "J";
+            if( c == boolean.class ) return "Z";
+            if( c == byte.class ) return "B";
+            if( c == char.class ) return "C";
+            if( c == short.class ) return "S";
+            if( c == float.class ) return "F";
+            if( c == double.class ) return "D";
+            return "V";
+        }
+        if( c.isArray() ) {
+            return c.getName().replace('.', '/');
+        }
+        return "L" + c.getName().replace('.', '/') + ";";
+    }
+
+    /**
+     * Returns the method descriptor for the given types.
+     */
+    static String descriptor(Class<?> returnType, Class<?>... params) {
+        StringBuilder sb = new StringBuilder("(");
+        for(Class<?> p : params) {
+            sb.append(descriptor(p));
+        }
+        return sb.append(')').append(descriptor(returnType)).toString();
+    }
+
+    /**
+     * Returns the name used to refer to a class from instructions like
+     * checkcast, which is the descriptor in the case of arrays.
+     */
+    static String internalName(Class<?> c) {
+        return c.isArray() ? descriptor(c) : c.getName().replace('.', '/');
+    }
+
+    /**
+     * Returns the number of local variable slots taken by a type.
+     */
+    static int slots(Class<?> c) {
+        return c == long.class || c == double.class ? 2 : 1;
+    }
+
+    /**
+     * The body of one method.
+     */
+    final class Code {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final int maxStack;
+        private final int maxLocals;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code(int access, int name, int descriptor, int maxStack, int maxLocals) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code op(int opcode, int index) {
+            bytes.write(opcode);
+            bytes.write(index >> 8);
+            bytes.write(index);
+            return this;
+        }
+
+        Code local(int opcode, int slot) {
+            bytes.write(opcode);
+            bytes.write(slot);
+            return this;
+        }
+
+        Code push(int value) {
+            if( value >= -1 && value <= 5 ) {
+                return op(ICONST_0 + value);
+            }
+            if( value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ) {
+                bytes.write(BIPUSH);
+                bytes.write(value);
+                return this;
+            }
+            return op(SIPUSH, value);
+        }
+
+        Code invokeInterface(int methodRef, int argSlots) {
+            op(INVOKEINTERFACE, methodRef);
+            bytes.write(argSlots + 1);
+            bytes.write(0);
+            return this;
+        }
+
+        /** Loads a local variable of the given type. */
+        Code load(Class<?> type, int slot) {
+            if( !type.isPrimitive() ) return local(ALOAD, slot);
+            if( type == long.class ) return local(LLOAD, slot);
+            if( type == float.class ) return local(FLOAD, slot);
+            if( type == double.class ) return local(DLOAD, slot);
+            return local(ILOAD, slot);
+        }
+
+        /** Returns a value of the given type. */
+        Code returns(Class<?> type) {
+            if( type == void.class ) return op(RETURN);
+            if( !type.isPrimitive() ) return op(ARETURN);
+            if( type == long.class ) return op(LRETURN);
+            if( type == float.class ) return op(FRETURN);
+            if( type == double.class ) return op(DRETURN);
+            return op(IRETURN);
+        }
+
+        void writeTo(DataOutputStream out, int codeName) throws IOException {
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + bytes.size());
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+
+}
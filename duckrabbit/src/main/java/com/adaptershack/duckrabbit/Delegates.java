@@ -0,0 +1,71 @@
+/*
+ * Delegates.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a DynamicDelegator subclass for which a delegating class should be
+ * generated at compile time by the duckrabbit-processor annotation processor.
+ * For example:
+ * <pre>
+ *   &#64;Delegates(Connection.class)
+ *   public abstract class LeakCheck extends DynamicDelegator&lt;Connection&gt; {
+ *
+ *       public LeakCheck(Connection c) {
+ *           super(c);
+ *       }
+ *
+ *       public void close() throws SQLException {
+ *           System.out.println("Close called!");
+ *           getWrapped().close();
+ *       }
+ *   }
+ * </pre>
+ * The processor writes a class named LeakCheckDelegator, which extends
+ * LeakCheck and implements Connection. Every Connection method that LeakCheck
+ * does not already have is written out to simply call the same method on
+ * <code>getWrapped()</code>, so that objects supplied lazily are made when
+ * first needed. If nothing is being wrapped, the method runs the interface's
+ * default, if it has one, or otherwise throws UnsupportedOperationException.
+ * Its getProxy method returns the object itself:
+ * <pre>
+ *      Connection c = new LeakCheckDelegator(realConnection).getProxy();
+ * </pre>
+ * The effect is the same as calling getProxy on an ordinary DynamicDelegator,
+ * but with no reflection at all, either when the object is made or when its
+ * methods are called.
+ * <p>
+ * Since there is no proxy, nothing that a DynamicDelegator does in its proxy
+ * happens either: interceptors, metrics, result caching, batching, bulkheads,
+ * leak tracking and asynchronous calls are all ignored, as is the engine
+ * passed to getProxy. A class that needs any of these should not be marked
+ * with this annotation.
+ * <p>
+ * Since the methods are called directly, the wrapped object must implement
+ * every interface given here. One that only has methods with the same
+ * signatures, which an ordinary DynamicDelegator would accept, is rejected
+ * by the generated class's constructors with an IllegalArgumentException.
+ * If the object is made lazily, the type given for it must implement them.
+ *
+ * @see DynamicDelegator
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Delegates {
+
+    /**
+     * The interfaces to be implemented by the generated class.
+     */
+    Class<?>[] value();
+
+}
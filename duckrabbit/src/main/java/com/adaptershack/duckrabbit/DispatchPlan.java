@@ -0,0 +1,486 @@
+/*
+ * DispatchPlan.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out which link of a chain each method called on the proxy goes
+ * to, and remembers the answers. The answers only depend on the classes
+ * of the objects in the chain, and which methods each can be called for,
+ * not the objects themselves, so a plan can be shared by any number of
+ * chains whose objects are of the same classes in the same order.
+ *
+ * @see InvocationChain
+ * @see ProxyTemplate
+ */
+final class DispatchPlan {
+
+    private static final Method OBJECT_TO_STRING;
+    static {
+        try {
+            OBJECT_TO_STRING = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Class<?>[] classes;
+    private final MethodIndex[] indexes;
+
+    /** True if methods taking compatible types match, not just the same ones. */
+    private final boolean loose;
+
+    /**
+     * Which methods each link can be called for, or null if any link
+     * can be called for any method it has. An entry is null for a link
+     * that isn't limited.
+     */
+    private final Scope[] scopes;
+
+    /**
+     * Memoized result of searching the chain for each method that has
+     * been called on the proxy. The proxy always passes the same Method
+     * instance for a given interface method, so this is keyed by identity.
+     * The map is never modified once published; new entries are added by
+     * copying it, so lookups need no locking.
+     */
+    private volatile Map<Method, Dispatch> dispatchTable = new IdentityHashMap<>();
+
+    /**
+     * The number of invokers that had been promoted when the dispatch
+     * table was last brought up to date with them.
+     * @see Invoker#promotions
+     */
+    private volatile int promotionsSeen = Invoker.promotions;
+
+    /**
+     * Every link each method could go to, for chains that broadcast
+     * calls. Built up in the same way as the dispatch table.
+     */
+    private volatile Map<Method, Dispatch[]> broadcastTable = new IdentityHashMap<>();
+
+    /** The same as promotionsSeen, for the broadcast table. */
+    private volatile int broadcastPromotionsSeen = Invoker.promotions;
+
+    /**
+     * Answers worked out ahead of time by prepare, keyed by equality
+     * since the proxy's own Method instances aren't known until it is
+     * called. Only used under the lock in resolve.
+     */
+    private final Map<Method, Dispatch> prepared = new HashMap<>();
+
+    DispatchPlan(Class<?>[] classes) {
+        this(classes, false);
+    }
+
+    DispatchPlan(Class<?>[] classes, boolean loose) {
+        this(classes, loose, null);
+    }
+
+    DispatchPlan(Class<?>[] classes, boolean loose, Scope[] scopes) {
+        this.classes = classes;
+        this.loose = loose;
+        this.scopes = scopes;
+        this.indexes = new MethodIndex[classes.length];
+        for(int i=0; i<classes.length; i++) {
+            indexes[i] = MethodIndex.of(classes[i]);
+        }
+    }
+
+    /**
+     * Returns the classes of the objects in the chain, in order.
+     * The array must not be modified.
+     */
+    Class<?>[] getClasses() {
+        return classes;
+    }
+
+    /** True if methods can be matched loosely, as well as exactly. */
+    boolean isLoose() {
+        return loose;
+    }
+
+    /**
+     * Returns which methods each link can be called for, or null if
+     * there are no limits. The array must not be modified.
+     */
+    Scope[] getScopes() {
+        return scopes;
+    }
+
+    /**
+     * Resolves every method of the given interfaces, along with the
+     * methods of Object that proxies pass along, so none of that has
+     * to happen when the proxy is called.
+     */
+    synchronized void prepare(Class<?>[] interfaces) {
+        for(Class<?> i : interfaces) {
+            for(Method m : i.getMethods()) {
+                prepared.put(m, search(m));
+            }
+        }
+        for(Method m : Object.class.getMethods()) {
+            prepared.put(m, search(m));
+        }
+    }
+
+    /**
+     * Returns the methods of the given interfaces that nothing in
+     * the chain has, in the order the interfaces were given.
+     */
+    synchronized List<Method> unimplemented(Class<?>[] interfaces) {
+        List<Method> missing = new ArrayList<>();
+        for(Class<?> i : interfaces) {
+            for(Method m : i.getMethods()) {
+                if( Modifier.isStatic(m.getModifiers()) || missing.contains(m) ) {
+                    continue;
+                }
+                Dispatch dispatch = prepared.get(m);
+                if( dispatch == null ) {
+                    dispatch = search(m);
+                    prepared.put(m, dispatch);
+                }
+                if( !dispatch.matched() && !dispatch.onProxy ) {
+                    missing.add(m);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Returns what the given method resolves to, searching the chain
+     * only if this method has not been seen before. If nothing in the
+     * chain has such a method, the answer is a Dispatch that doesn't
+     * match, and that is remembered just the same.
+     */
+    Dispatch dispatch(Method method) {
+        Dispatch dispatch = dispatchTable.get(method);
+        if( dispatch == null || promotionsSeen != Invoker.promotions ) {
+            dispatch = resolve(method);
+        }
+        return dispatch;
+    }
+
+    /**
+     * Searches the chain for the link that will handle the given method,
+     * and remembers the answer so that the search only happens once
+     * per method. If any invokers have been promoted since this was last
+     * done, the answers that use them are changed to use what they were
+     * promoted to.
+     */
+    private synchronized Dispatch resolve(Method method) {
+        int promotions = Invoker.promotions;
+        if( promotions != promotionsSeen ) {
+            Map<Method, Dispatch> table = new IdentityHashMap<>(dispatchTable);
+            for(Map.Entry<Method, Dispatch> e : table.entrySet()) {
+                e.setValue(promoted(e.getValue()));
+            }
+            dispatchTable = table;
+            promotionsSeen = promotions;
+        }
+        Dispatch dispatch = dispatchTable.get(method);
+        if( dispatch != null ) {
+            return dispatch;
+        }
+        dispatch = prepared.get(method);
+        if( dispatch == null ) {
+            dispatch = search(method);
+        }
+        dispatch = promoted(dispatch);
+
+        Map<Method, Dispatch> table = new IdentityHashMap<>(dispatchTable);
+        table.put(method, dispatch);
+        dispatchTable = table;
+        return dispatch;
+    }
+
+    /**
+     * Returns every link that has the given method, in chain order,
+     * searching only if this method has not been seen before.
+     */
+    Dispatch[] dispatchAll(Method method) {
+        Dispatch[] all = broadcastTable.get(method);
+        if( all == null || broadcastPromotionsSeen != Invoker.promotions ) {
+            all = resolveAll(method);
+        }
+        return all;
+    }
+
+    /**
+     * Searches the chain for every link that has the given method, as
+     * resolve does for the first, and swaps in promoted invokers the same
+     * way.
+     */
+    private synchronized Dispatch[] resolveAll(Method method) {
+        int promotions = Invoker.promotions;
+        if( promotions != broadcastPromotionsSeen ) {
+            Map<Method, Dispatch[]> table = new IdentityHashMap<>(broadcastTable);
+            for(Map.Entry<Method, Dispatch[]> e : table.entrySet()) {
+                e.setValue(promoted(e.getValue()));
+            }
+            broadcastTable = table;
+            broadcastPromotionsSeen = promotions;
+        }
+        Dispatch[] all = broadcastTable.get(method);
+        if( all != null ) {
+            return all;
+        }
+        List<Dispatch> found = new ArrayList<>();
+        for(int index=0; index<classes.length; index++) {
+            Dispatch d = searchAt(index, method);
+            if( d != null ) {
+                found.add(d);
+            }
+        }
+        all = promoted(found.toArray(new Dispatch[found.size()]));
+
+        Map<Method, Dispatch[]> table = new IdentityHashMap<>(broadcastTable);
+        table.put(method, all);
+        broadcastTable = table;
+        return all;
+    }
+
+    /**
+     * Returns the answer with its invoker swapped for the one it was
+     * promoted to, if it has been.
+     */
+    private static Dispatch promoted(Dispatch dispatch) {
+        Invoker promoted = dispatch.invoker == null ? null : dispatch.invoker.promoted();
+        return promoted == null ? dispatch : new Dispatch(dispatch, promoted);
+    }
+
+    /**
+     * Returns the answers with their invokers swapped as above, in a new
+     * array if any of them were, since the old one may be in use.
+     */
+    private static Dispatch[] promoted(Dispatch[] all) {
+        Dispatch[] swapped = all;
+        for(int i=0; i<all.length; i++) {
+            Dispatch d = promoted(all[i]);
+            if( d != all[i] ) {
+                if( swapped == all ) {
+                    swapped = all.clone();
+                }
+                swapped[i] = d;
+            }
+        }
+        return swapped;
+    }
+
+    private Dispatch search(Method method) {
+
+        if( method.getDeclaringClass() == Object.class ) {
+            return searchObjectMethod(method);
+        }
+
+        // search the objects in the chain, one by one
+        for(int index=0; index<classes.length; index++) {
+            Dispatch d = searchAt(index, method);
+            if( d != null ) {
+                return d;
+            }
+        }
+
+        // nobody has it, but the interface says what to do
+        if( method.isDefault() ) {
+            Invoker invoker = MethodIndex.defaultInvoker(method);
+            if( invoker != null ) {
+                return new Dispatch(method, invoker);
+            }
+        }
+        return new Dispatch(method);
+    }
+
+    /**
+     * Works out what equals, hashCode and toString do. All three follow
+     * the same rule. If the class of some link has its own toString, the
+     * proxy stands for the first such link, as a wrapper around a value
+     * such as a List usually should: all three go to that link, so the
+     * proxy prints like it, equals it and hashes like it. Otherwise the
+     * proxy is an object in its own right, and all three are its own, by
+     * identity, just as if it didn't override them.
+     */
+    private Dispatch searchObjectMethod(Method method) {
+        for(int index=0; index<classes.length; index++) {
+            Method own = indexes[index].match(OBJECT_TO_STRING);
+            if( own != null && own.getDeclaringClass() != Object.class ) {
+                Method target = indexes[index].match(method);
+                if( target != null ) {
+                    return new Dispatch(index, target, true);
+                }
+            }
+        }
+        Invoker invoker = Invoker.forObjectMethod(method);
+        if( invoker == null ) {
+            return new Dispatch(method);
+        }
+        return new Dispatch(method, invoker);
+    }
+
+    /**
+     * Returns how the link at the given position would handle the
+     * method, or null if it has no such method.
+     */
+    private Dispatch searchAt(int index, Method method) {
+        
+        Scope scope = scopes == null ? null : scopes[index];
+
+        // if the class implements the interface that 
+        // declared this method, run it
+        if( method.getDeclaringClass().isAssignableFrom( classes[index] ) ) {
+            return scope == null || scope.allows(method) ? new Dispatch(index, method) : null;
+        }
+        
+        // if the class has a method that has the same
+        // name and type as this method, find that
+        // method and run it instead
+        Method match = indexes[index].match(method);
+        if( match != null) {
+            return scope == null || scope.allows(match) ? new Dispatch(index, match) : null;
+        }
+
+        // failing that, maybe a method the arguments can be passed to
+        if( loose ) {
+            MethodIndex.Compatible compatible = indexes[index].matchCompatible(method);
+            if( compatible != null && (scope == null || scope.allows(compatible.method)) ) {
+                return new Dispatch(index, compatible.method, compatible.invoker);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The methods a link can be called for: those that a method with the
+     * same name and parameter types is declared for in one of the given
+     * interfaces, and in one of each group of interfaces it was already
+     * limited to. This is how the objects of a proxy that were added to a
+     * chain in its place are kept to what the proxy let through.
+     */
+    static final class Scope {
+        private final List<List<Class<?>>> groups = new ArrayList<>();
+
+        Scope(Class<?>[] interfaces, Scope within) {
+            groups.add(Arrays.asList(interfaces.clone()));
+            if( within != null ) {
+                groups.addAll(within.groups);
+            }
+        }
+
+        boolean allows(Method m) {
+            for(List<Class<?>> group : groups) {
+                if( !declares(group, m) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean declares(List<Class<?>> interfaces, Method m) {
+            for(Class<?> i : interfaces) {
+                if( MethodIndex.of(i).match(m) != null ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Scope && groups.equals(((Scope) o).groups);
+        }
+
+        public int hashCode() {
+            return groups.hashCode();
+        }
+    }
+
+    /**
+     * The position in the chain, and the method on that link's object,
+     * that a given interface method resolved to. For methods that
+     * nothing in the chain has, the index is -1, and the message to
+     * throw UnsupportedOperationException with is made up front.
+     */
+    static final class Dispatch {
+        final int index;
+        final Method method;
+        final Invoker invoker;
+        final String unsupported;
+
+        /**
+         * True for calls that are answered straight away, without going
+         * through interceptors, metrics or anything else the chain does:
+         * equals, hashCode and toString, and default methods that nothing
+         * in the chain has. If the index is -1, the invoker is handed the
+         * proxy itself as its target.
+         */
+        final boolean onProxy;
+
+        Dispatch(int index, Method method) {
+            this(index, method, false);
+        }
+
+        Dispatch(int index, Method method, boolean onProxy) {
+            this.index = index;
+            this.method = method;
+            this.invoker = MethodIndex.invoker(method);
+            this.unsupported = null;
+            this.onProxy = onProxy;
+        }
+
+        /**
+         * Creates the answer for a method called through an invoker of its
+         * own, such as one that converts its arguments.
+         */
+        Dispatch(int index, Method method, Invoker invoker) {
+            this.index = index;
+            this.method = method;
+            this.invoker = invoker;
+            this.unsupported = null;
+            this.onProxy = false;
+        }
+
+        /** Creates the same answer, but with another invoker. */
+        Dispatch(Dispatch dispatch, Invoker invoker) {
+            this.index = dispatch.index;
+            this.method = dispatch.method;
+            this.invoker = invoker;
+            this.unsupported = dispatch.unsupported;
+            this.onProxy = dispatch.onProxy;
+        }
+
+        /** Creates the answer for a method that the proxy itself handles. */
+        Dispatch(Method method, Invoker invoker) {
+            this.index = -1;
+            this.method = method;
+            this.invoker = invoker;
+            this.unsupported = null;
+            this.onProxy = true;
+        }
+
+        /** Creates the answer for a method that nothing in the chain has. */
+        Dispatch(Method missing) {
+            this.index = -1;
+            this.method = null;
+            this.invoker = null;
+            this.unsupported = "couldn't find metho in my chain of respsonsibility: " + missing;
+            this.onProxy = false;
+        }
+
+        boolean matched() {
+            return index >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,479 @@
+/*
+ * GenericWrapper.java
+ *
+ * Created on January 13, 2005, 9:31 AM
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A class to make it easy to write dynamic proxies that
+ * wrap existing classes. Simply write methods that have
+ * the same names and signatures as the methods that you
+ * want to override. All other methods will be tunnelled
+ * straight through to the wrapped object. Uses reflection
+ * heavily, obviously. 
+ * <p>
+ * It is not neccessary for the wrapper class to implement the same
+ * interface(s) as the wrapped object at compile time. Method name matching
+ * takes place dynamically at run time.
+ * <p>
+ * For a simple example, a wrapper around java.util.Map might look like this:
+ * <pre>
+ *   public class MapWrapper extends DynamicWrapper {
+ *
+ *       public MapWrapper(Object o) {
+ *           super(o);
+ *       }
+ *
+ *       public Object put(Object key, Object value) {
+ *           System.out.println("Put called!");
+ *           return ((Map)wrapped).put(key,value);
+ *       }
+ *   }
+ * </pre>
+ * Another class might use MapWrapper like this:
+ * <pre>
+ *      Map m = (Map) new MapWrapper(new HashMap()).getProxy();
+ *      m.put("foo","bar");
+ *      System.out.println( m.get("foo"));
+ * </pre>
+ * When <code>put</code> is called, the method declared in MapWrapper
+ * will be executed. When <code>get</code> is called, the method executed
+ * will be the one from HashMap. It so happens that in this case, MapWrapper's
+ * <code>put</code> method also calls the method on the underlying Map after
+ * doing some logging output.
+ * <p>
+ * Here is an example that illustrates the introduction of an extra interface
+ * (in this case, Runnable) that is not implemented by the wrapped class:
+ *<pre>
+ *   public class MapWrapper extends GenericWrapper implements Runnable {
+ *
+ *       public MapWrapper(Object o) {
+ *           super(o);
+ *       }
+ *
+ *       public Object put(Object key, Object value) {
+ *           System.out.println("Put called!");
+ *           return ((Map)wrapped).put(key,value);
+ *       }
+ *
+ *       public void run() {
+ *          System.out.println("Whoohoo!");
+ *       }
+ *   }
+ * </pre>
+ * Obviiously the above is highly contrived.
+ * The code to use it might look like this:
+ * <pre>
+ *      Map m = (Map) new MapWrapper(new HashMap()).getProxy();
+ *      m.put("foo","bar");
+ *      System.out.println( m.get("foo"));
+ *      ((Runnable)m).run();
+ * </pre>
+ * @see java.lang.reflect.Proxy
+ * @see java.lang.reflect.InvocationHandler
+ * @author jRobertson
+ */
+public class DynamicDelegator<T> {
+    
+    /**
+     * The inner object that is being wrapped by us. This may be null.
+     * Depending on how we were constructed, this object may or may not
+     * actually implement any of the interfaces. Volatile, so that methods
+     * of a subclass see a replacement as soon as replaceWrapped returns,
+     * whichever thread they run on.
+     */
+    protected volatile T wrapped;
+    
+    /**
+     * If the getProxy method has been called, thisProxy
+     * is a reference to the proxy object that was returned
+     * by getProxy. This reference may be passed to any callbacks
+     * or other methods where you would normally pass "this".
+     */
+    protected T thisProxy;
+
+    /**
+     * Contains any additional interfaces to be implemented
+     * by the proxy in additional to those automatically taken
+     * from the wrapped object or the DynamicDelegator itself.
+     */
+    protected Class<?>[] additionalInterfaces = { };
+
+    /**
+     * If set, every call made through the proxy is counted and
+     * timed here. Null means no metrics are kept.
+     * @see InvocationMetrics
+     */
+    protected InvocationMetrics metrics;
+
+    /**
+     * If set, the calls to the proxy that this batcher selects are
+     * held back and sent on to the wrapped object in batches.
+     * @see CallBatcher
+     */
+    protected CallBatcher callBatcher;
+
+    /**
+     * If set, the calls to the proxy that this dispatcher selects are
+     * run on other threads, rather than the caller's.
+     * @see AsyncDispatcher
+     */
+    protected AsyncDispatcher asyncDispatcher;
+
+    /**
+     * If set, the proxy remembers the results of the methods this
+     * cache is told to, or that are marked Cached.
+     * @see ResultCache
+     */
+    protected ResultCache resultCache;
+
+    /**
+     * If set, limits how many calls to the proxy can be in progress at
+     * once. Give several proxies the same one to limit them together.
+     * @see Bulkhead
+     */
+    protected Bulkhead bulkhead;
+
+    /**
+     * If true, getProxy throws UnsupportedOperationException, listing
+     * them, if any interface methods aren't implemented by either this
+     * wrapper or the wrapped object. Otherwise only those methods throw,
+     * when they're called.
+     * @see InvocationChain#setFailFast(boolean)
+     */
+    protected boolean failFast;
+
+    /**
+     * If true, methods of the wrapper and the wrapped object are matched
+     * to interface methods whose parameters can be passed to them, with
+     * widening and boxing, rather than only those taking exactly the same
+     * types.
+     * @see InvocationChain#setLooseMatching(boolean)
+     */
+    protected boolean looseMatching;
+
+    /**
+     * If set, each proxy made by getProxy is watched, and the wrapped
+     * object checked to see if it was closed once the proxy has been
+     * garbage collected. This is the way to look for leaks now, rather
+     * than overriding finalize(). If the wrapped object is made lazily,
+     * it is only checked if it was ever made.
+     * @see LeakTracker
+     */
+    protected LeakTracker<? super T> leakTracker;
+
+    /**
+     * The interceptors added with addInterceptor, and which methods
+     * each applies to.
+     */
+    private final List<Interceptor> interceptors = new ArrayList<>();
+    private final List<Predicate<Method>> interceptorSelectors = new ArrayList<>();
+
+    /**
+     * The chain behind the proxy most recently returned by getProxy.
+     */
+    InvocationChain chain;
+
+    /**
+     * What the leak tracker knows about that proxy, so that it checks
+     * whatever replaceWrapped put in place of the wrapped object.
+     */
+    private LeakTracker.Tracked<? super T> tracked;
+
+    /**
+     * Makes the wrapped object when it is first needed, if this
+     * delegator was given a Supplier rather than the object itself.
+     */
+    private LazyDelegate<T> lazy;
+    
+    /** Creates a new instance of DynamicDelegator wrapping an object of type T */
+    public DynamicDelegator(T wrapped, Class<?> ... interfaces) {
+        this.wrapped = wrapped;
+        additionalInterfaces = interfaces;
+    }
+
+
+    /**
+     * Creates a new instance of DynamicDelegator that wraps an object
+     * which isn't made until a call to the proxy needs it. Until then,
+     * the wrapped field is null, and methods of this class that want the
+     * wrapped object should call getWrapped() instead. Methods are
+     * matched against the given type.
+     * @see InvocationChain#addLazy(Class, Supplier)
+     */
+    public DynamicDelegator(Class<? extends T> type, Supplier<? extends T> supplier, Class<?>... interfaces) {
+        this.lazy = new LazyDelegate<T>(type, supplier);
+        additionalInterfaces = interfaces;
+    }
+    
+    /** Creates a new instance of DynamicDelegator not wrapping any object
+     *  but implementing the specified interface(s).
+     **/
+    public DynamicDelegator(Class<T> mainInterface, Class<?>... extras) {
+    	List<Class<?>> clazzes = new ArrayList<>();
+    	clazzes.add(mainInterface);
+    	clazzes.addAll(clazzes);
+    	this.additionalInterfaces = clazzes.toArray( new Class<?>[clazzes.size()] );
+    }
+
+    /**
+     * Static utility method that takes a given object and uses it to
+     * "implement" all of the interfaces based on method matching.
+     * The object need not be declared to implement any of them.
+     * Unimplemented methods will throw UnsupportedOperationException.
+     * 
+     * @param impl
+     * @param mainInterface
+     * @param extras
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+	public static <T> T getProxy(Object impl, Class<T> mainInterface, Class<?>... extras ) {
+    	InvocationChain chain = new InvocationChain();
+    	chain.add(impl);
+    	chain.addInterface(mainInterface);
+    	chain.addInterfaces(extras);
+    	return (T) chain.newProxyInstance();
+    }
+
+	/**
+     * Static utility method that takes two objects and constructs
+     * a delegation relation between them in order to "implement"
+     * all of the interfaces based on method matching.
+     * The objects need not be declared to implement any of the interfaces.
+     */
+	public static <T> T getProxy(Class<T> mainInterface, Object... delegates ) {
+		return getProxy(mainInterface, null, delegates);
+	}
+	
+	/**
+     * Static utility method that takes any number objects and constructs
+     * a delegation chain along all of them in order to "implement"
+     * all of the interfaces based on method matching.
+     * The objects need not be declared to implement any of the interfaces.
+     * 
+     * @param impl
+     * @param mainInterface
+     * @param extras
+     * @return
+     */
+	public static <T> T getProxy(Class<T> mainInterface, Class<?>[] extras, Object... delegates ) {
+    	return getProxy(ProxyEngine.getDefault(), mainInterface, extras, delegates);
+    }
+
+	/**
+     * Same as getProxy(mainInterface, delegates), but using the given
+     * engine to make the proxy.
+     * @see ProxyEngine
+     */
+	public static <T> T getProxy(ProxyEngine engine, Class<T> mainInterface, Object... delegates ) {
+		return getProxy(engine, mainInterface, null, delegates);
+	}
+
+	/**
+     * Same as getProxy(mainInterface, extras, delegates), but using the given
+     * engine to make the proxy.
+     * @see ProxyEngine
+     */
+    @SuppressWarnings("unchecked")
+	public static <T> T getProxy(ProxyEngine engine, Class<T> mainInterface, Class<?>[] extras, Object... delegates ) {
+    	InvocationChain chain = new InvocationChain();
+    	for(Object o : delegates) {	
+    		chain.add(o);
+    	}
+    	chain.addInterface(mainInterface);
+    	if(extras != null) {
+    		chain.addInterfaces(extras);
+    	}
+    	return (T) chain.newProxyInstance(engine);
+    }
+    
+    
+    /**
+     * Uses InvocationChain to tie this wrapper and the wrapped object
+     * together as a single proxy instance. The proxy implements all
+     * interfaces that are implemented by either this wrapper or by
+     * the wrapped Object, as well as any interfaces returned by the
+     * getAdditionalInterfaces method. Any method called on this proxy
+     * will be invoked on the wrapper if such a method if found there,
+     * or on the wrapped object otherwise.
+     * @see InvocationChain
+     */
+	public T getProxy() {
+        return getProxy(ProxyEngine.getDefault());
+    }
+
+    /**
+     * Same as getProxy(), but using the given engine to make the proxy.
+     * @see ProxyEngine
+     */
+    @SuppressWarnings("unchecked")
+	public T getProxy(ProxyEngine engine) {
+        InvocationChain chain = new InvocationChain();
+        chain.add(this);
+        if( wrapped != null) {
+        	chain.add(wrapped);
+        } else if( lazy != null ) {
+            chain.addLazy(lazy);
+        }
+        chain.addInterfaces(getAdditionalInterfaces());
+        chain.setMetrics(getMetrics());
+        chain.setCallBatcher(callBatcher);
+        chain.setAsyncDispatcher(asyncDispatcher);
+        chain.setResultCache(resultCache);
+        chain.setBulkhead(bulkhead);
+        for(int i=0; i<interceptors.size(); i++) {
+            chain.addInterceptor(interceptorSelectors.get(i), interceptors.get(i));
+        }
+        chain.setFailFast(failFast);
+        chain.setLooseMatching(looseMatching);
+        thisProxy = (T) chain.newProxyInstance(engine);
+        this.chain = chain;
+        tracked = null;
+        if( leakTracker != null && wrapped != null ) {
+            tracked = leakTracker.watch(thisProxy, wrapped, null);
+        } else if( leakTracker != null && lazy != null ) {
+            tracked = trackLazy(leakTracker);
+        }
+        return thisProxy;
+    }
+
+    /**
+     * Tracks the proxy just made by the given tracker, which will look at
+     * the wrapped object only if it was ever made. This is a method of its
+     * own just to give the tracker's type a name.
+     */
+    private <S> LeakTracker.Tracked<S> trackLazy(LeakTracker<S> tracker) {
+        @SuppressWarnings("unchecked")
+        LazyDelegate<? extends S> l = (LazyDelegate<? extends S>) lazy;
+        return tracker.track(thisProxy, l);
+    }
+
+    /**
+     * Swaps the wrapped object for another one of exactly the same class,
+     * behind the back of the proxy returned by getProxy, without making a
+     * new proxy. Calls already under way on the proxy finish on the old
+     * object; calls made after this returns go to the new one. The proxy
+     * takes no locks either way. If the wrapped object is made lazily and
+     * hasn't been made yet, it never is; the replacement, which need only
+     * be of the type given to the constructor, is used in its place.
+     * A leak tracker checks the replacement, rather than the object it
+     * replaced, when the proxy is collected.
+     * @see InvocationChain#replace(Object, Object)
+     * @throws IllegalStateException if there is no proxy, or nothing
+     * is wrapped
+     */
+    public synchronized void replaceWrapped(T replacement) {
+        if( chain == null || wrapped == null && lazy == null ) {
+            throw new IllegalStateException("there is no wrapped object behind a proxy to replace");
+        }
+        T current = wrapped;
+        if( current == null ) {
+            if( lazy.supplyInstead(replacement) ) {
+                wrapped = replacement;
+                return;
+            }
+            // it was made after all
+            current = lazy.peek();
+        }
+        if( !chain.replace(current, replacement) ) {
+            throw new IllegalStateException("the wrapped object is no longer in the chain");
+        }
+        wrapped = replacement;
+        if( tracked != null ) {
+            tracked.replace(replacement);
+        }
+    }
+    
+  
+    
+
+    /**
+     * Returns the wrapped object, making it first if it was given as
+     * a Supplier and hasn't been made yet. Returns null if there is
+     * no wrapped object.
+     */
+    protected T getWrapped() {
+        T w = wrapped;
+        if( w == null && lazy != null ) {
+            w = lazy.get();
+            synchronized(this) {
+                // unless it was replaced in the meantime
+                if( wrapped == null ) {
+                    wrapped = w;
+                } else {
+                    w = wrapped;
+                }
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Makes sure the wrapped object implements all the given interfaces,
+     * or if it hasn't been made yet, that it will. Nothing wrapped is fine.
+     * Classes generated for {@link Delegates} call this from their
+     * constructors, since they call the wrapped object's methods directly,
+     * rather than matching them up by name as a proxy does.
+     * @throws IllegalArgumentException if it doesn't
+     */
+    protected void requireWrapped(Class<?>... interfaces) {
+        Class<?> type = wrapped != null ? wrapped.getClass() : lazy != null ? lazy.type : null;
+        if( type == null ) {
+            return;
+        }
+        for(Class<?> i : interfaces) {
+            if( !i.isAssignableFrom(type) ) {
+                throw new IllegalArgumentException(type.getName() + " does not implement " + i.getName()
+                    + ", so it can only be wrapped by getProxy, not by a generated delegator");
+            }
+        }
+    }
+
+    /**
+     * Runs every call made through proxies made after this through the
+     * given interceptor, in the order interceptors were added. This is
+     * usually done in the constructor or an instance initializer.
+     * @see Interceptor
+     */
+    protected void addInterceptor(Interceptor interceptor) {
+        addInterceptor(m -> true, interceptor);
+    }
+
+    /**
+     * Runs calls to the methods for which the given test is true through
+     * the given interceptor, in proxies made after this.
+     * @see InvocationChain#addInterceptor(Predicate, Interceptor)
+     */
+    protected void addInterceptor(Predicate<Method> selector, Interceptor interceptor) {
+        interceptorSelectors.add(selector);
+        interceptors.add(interceptor);
+    }
+
+    /**
+     * Returns any additional interfaces to be implemented
+     * by the proxy in additional to those automatically taken
+     * from the wrapped object or the DynamicDelegator itself.
+     */
+     protected Class<?>[] getAdditionalInterfaces() {
+         return additionalInterfaces;
+     }
+
+    /**
+     * Returns the metrics that calls to the proxy will be recorded
+     * in, or null if they aren't to be recorded.
+     */
+     protected InvocationMetrics getMetrics() {
+         return metrics;
+     }
+ 
+    
+}
@@ -0,0 +1,760 @@
+/*
+ * GeneratedProxyEngine.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import static com.adaptershack.duckrabbit.ClassFileWriter.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A ProxyEngine that writes a real class for each combination of
+ * interfaces and delegate classes, instead of going through
+ * java.lang.reflect.Proxy. Each interface method in the generated class
+ * calls the delegate it resolved to directly, with its arguments as-is,
+ * so there is no argument array, no boxing, and nothing in the way of
+ * the JIT inlining all the way through to the delegate. In other words,
+ * the proxy ends up looking much like a delegating class written by hand.
+ * <p>
+ * Delegate methods that can be called directly (public methods of public
+ * classes whose signature matches the interface exactly) are. Others,
+ * such as the methods of anonymous classes, are called through a
+ * MethodHandle held in a static final field of the generated class.
+ * Anything the chain can't resolve goes through InvocationChain.invoke,
+ * just as it would with a java.lang.reflect.Proxy. Default methods that
+ * nothing in the chain has, and equals and hashCode, aren't written at
+ * all, so the generated class simply inherits them; toString is too,
+ * unless something in the chain has its own.
+ * <p>
+ * Each generated class lives in its own class loader, so it can be
+ * unloaded along with the delegate classes it was made for. On Java 15
+ * and up, classes whose interfaces and delegates can all be seen from
+ * this library are defined as hidden classes instead, which are cheaper
+ * to make and are unloaded as soon as nothing uses them. If a class
+ * can't be generated, for example because one of the interfaces isn't
+ * public, the proxy is made by ProxyEngine.REFLECTION instead. The same
+ * goes for chains that do something extra on every call, such as recording
+ * InvocationMetrics, since those calls all have to pass through
+ * InvocationChain.invoke.
+ * <p>
+ * The generated class fetches its delegates from the chain on each call,
+ * so objects swapped in with InvocationChain.replace are seen right away.
+ *
+ * @see ProxyEngine#GENERATED
+ */
+public final class GeneratedProxyEngine implements ProxyEngine {
+
+    static final String PACKAGE = "com/adaptershack/duckrabbit/generated/";
+    /** Where generated classes go when they can be hidden classes, on Java 15 and up. */
+    static final String HIDDEN_PACKAGE = "com/adaptershack/duckrabbit/";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String CHAIN = "com/adaptershack/duckrabbit/InvocationChain";
+    private static final String INVOKER = "com/adaptershack/duckrabbit/Invoker";
+    private static final String HANDLE = "java/lang/invoke/MethodHandle";
+    private static final String CHAIN_FIELD = "chain";
+    private static final String CHAIN_DESC = "L" + CHAIN + ";";
+    private static final String INVOKE_DESC =
+        "(Ljava/lang/Object;Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;";
+    private static final String CONSTRUCTOR_DESC = "(" + CHAIN_DESC + ")V";
+    private static final String GET_DELEGATE_DESC = "(I)Ljava/lang/Object;";
+    private static final String LOOKUP_DESC = "Ljava/lang/invoke/MethodHandles$Lookup;";
+
+    private static final AtomicLong counter = new AtomicLong();
+
+    /** Values for the static fields of classes that are being initialized. */
+    private static final Map<String, Object[]> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Constructors of the generated classes, kept with whichever of the
+     * classes in the shape has a class loader that can see all the others,
+     * so that they go away when it does, and don't keep any other class
+     * loader alive. An empty value means that a class couldn't be generated
+     * for that shape.
+     */
+    private static final ClassValue<Map<Shape, Optional<Constructor<?>>>> generated =
+        new ClassValue<Map<Shape, Optional<Constructor<?>>>>() {
+            protected Map<Shape, Optional<Constructor<?>>> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+
+    private static final Method[] OBJECT_METHODS;
+    static {
+        try {
+            OBJECT_METHODS = new Method[] {
+                Object.class.getMethod("equals", Object.class),
+                Object.class.getMethod("hashCode"),
+                Object.class.getMethod("toString")
+            };
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    GeneratedProxyEngine() {
+    }
+
+    public Object newProxyInstance(InvocationChain chain) {
+        if( !chain.isPlain() ) {
+            return REFLECTION.newProxyInstance(chain);
+        }
+        Optional<Constructor<?>> constructor = constructorFor(chain);
+        if( !constructor.isPresent() ) {
+            return REFLECTION.newProxyInstance(chain);
+        }
+        return newInstance(constructor.get(), chain);
+    }
+
+    public Function<InvocationChain, Object> newProxyFactory(InvocationChain prototype) {
+        if( !prototype.isPlain() ) {
+            return REFLECTION.newProxyFactory(prototype);
+        }
+        Optional<Constructor<?>> constructor = constructorFor(prototype);
+        if( !constructor.isPresent() ) {
+            return REFLECTION.newProxyFactory(prototype);
+        }
+        Constructor<?> c = constructor.get();
+        return chain -> newInstance(c, chain);
+    }
+
+    private static Object newInstance(Constructor<?> constructor, InvocationChain chain) {
+        try {
+            return constructor.newInstance(chain);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the constructor of the class generated for chains shaped
+     * like this one, generating it if need be. The constructor is absent
+     * if such a class can't be generated.
+     */
+    private static Optional<Constructor<?>> constructorFor(InvocationChain chain) {
+        DispatchPlan plan = chain.getPlan();
+        Class<?>[] classes = plan.getClasses();
+        if( classes.length == 0 ) {
+            return Optional.empty();
+        }
+
+        Class<?>[] interfaces = chain.getProxyInterfaces();
+        Shape shape = new Shape(interfaces, classes, plan.isLoose(), plan.getScopes());
+        Optional<Constructor<?>> constructor = cached(shape);
+        if( constructor != null ) {
+            return constructor;
+        }
+
+        Class<?> owner = ownerOf(interfaces, classes);
+        if( owner == null ) {
+            // nowhere to keep it that wouldn't hold on to some loader
+            return Optional.ofNullable(generate(chain, interfaces, classes));
+        }
+
+        Map<Shape, Optional<Constructor<?>>> cache = generated.get(owner);
+        constructor = cache.get(shape);
+        if( constructor == null ) {
+            constructor = Optional.ofNullable(generate(chain, interfaces, classes));
+            Optional<Constructor<?>> raced = cache.putIfAbsent(shape, constructor);
+            if( raced != null ) {
+                constructor = raced;
+            }
+        }
+        return constructor;
+    }
+
+    /**
+     * Returns the constructor already made for this shape, or null if
+     * there isn't one yet. The owner is always one of the shape's classes,
+     * tried in the same order as ownerOf, and usually the first, so this
+     * finds it without having to ask any class loader anything.
+     */
+    private static Optional<Constructor<?>> cached(Shape shape) {
+        for(Class<?> c : shape.classes) {
+            Optional<Constructor<?>> constructor = generated.get(c).get(shape);
+            if( constructor != null ) {
+                return constructor;
+            }
+        }
+        for(Class<?> c : shape.interfaces) {
+            Optional<Constructor<?>> constructor = generated.get(c).get(shape);
+            if( constructor != null ) {
+                return constructor;
+            }
+        }
+        return generated.get(GeneratedProxyEngine.class).get(shape);
+    }
+
+    /**
+     * Returns the class that the generated class for this shape should be
+     * kept with: one whose class loader can see all the other classes, and
+     * this library, since the generated class refers to all of those.
+     * Usually they all come from the same loader, or from its parents, and
+     * this is the delegate class. Returns null if no one loader sees them all.
+     */
+    static Class<?> ownerOf(Class<?>[] interfaces, Class<?>[] classes) {
+        ClassLoader first = classes[0].getClassLoader();
+        if( sameLoader(first, interfaces) && sameLoader(first, classes)
+                && first == GeneratedProxyEngine.class.getClassLoader() ) {
+            return classes[0];
+        }
+        List<Class<?>> all = new ArrayList<>();
+        Collections.addAll(all, classes);
+        Collections.addAll(all, interfaces);
+        all.add(GeneratedProxyEngine.class);
+        for(Class<?> candidate : all) {
+            if( seesAll(candidate.getClassLoader(), all) ) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean sameLoader(ClassLoader loader, Class<?>[] types) {
+        for(Class<?> c : types) {
+            if( c.getClassLoader() != loader ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean seesAll(ClassLoader loader, List<Class<?>> types) {
+        for(Class<?> c : types) {
+            if( c.getClassLoader() == loader ) {
+                continue;
+            }
+            try {
+                if( Class.forName(c.getName(), false, loader) != c ) {
+                    return false;
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the chain behind the given object, if it is a proxy made
+     * by this engine, or null if it isn't.
+     */
+    static InvocationChain chainOf(Object o) {
+        Class<?> c = o.getClass();
+        String name = c.getName();
+        if( !name.startsWith(dotted(PACKAGE)) && !name.startsWith(dotted(HIDDEN_PACKAGE) + "Proxy$") ) {
+            return null;
+        }
+        try {
+            Field f = c.getDeclaredField(CHAIN_FIELD);
+            f.setAccessible(true);
+            return (InvocationChain) f.get(o);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Called from the static initializer of each generated class, with
+     * the class's own Lookup, to get the values of its static fields.
+     * This has to be public, since most generated classes are in another
+     * class loader, but only a class itself can make a Lookup with private
+     * access to it, so nothing else can get a generated class's values.
+     * @throws IllegalArgumentException if the Lookup isn't a generated class's own
+     */
+    public static Object[] bootstrap(MethodHandles.Lookup lookup) {
+        Class<?> generatedClass = lookup.lookupClass();
+        if( (lookup.lookupModes() & MethodHandles.Lookup.PRIVATE) == 0 || !isGenerated(generatedClass) ) {
+            throw new IllegalArgumentException(generatedClass.getName() + " isn't a generated class");
+        }
+        String name = generatedClass.getName();
+        // hidden classes have a suffix after the name they were given
+        int slash = name.indexOf('/');
+        return pending.remove(slash < 0 ? name : name.substring(0, slash));
+    }
+
+    /**
+     * True if the class was defined by this engine: in a class loader of
+     * its own, or as a hidden class in this library's loader.
+     */
+    private static boolean isGenerated(Class<?> c) {
+        ClassLoader loader = c.getClassLoader();
+        return loader instanceof ShapeClassLoader
+            || loader == GeneratedProxyEngine.class.getClassLoader() && c.getName().indexOf('/') >= 0;
+    }
+
+    /**
+     * Writes and loads a class for the given shape, returning its
+     * constructor, or null if this shape can't be done.
+     */
+    private static Constructor<?> generate(InvocationChain chain, Class<?>[] interfaces, Class<?>[] classes) {
+        for(Class<?> i : interfaces) {
+            if( !Modifier.isPublic(i.getModifiers()) ) {
+                return null;
+            }
+        }
+
+        Map<String, Method> methods = interfaceMethods(interfaces);
+        if( methods == null ) {
+            return null;
+        }
+
+        String name = Platform.packageFor(interfaces, classes) + "Proxy$" + counter.incrementAndGet();
+        String[] interfaceNames = new String[interfaces.length];
+        for(int i=0; i<interfaces.length; i++) {
+            interfaceNames[i] = internalName(interfaces[i]);
+        }
+
+        ClassFileWriter cw = new ClassFileWriter(name, OBJECT, interfaceNames);
+        List<Object> statics = new ArrayList<>();
+        List<String> staticDescs = new ArrayList<>();
+
+        cw.field(ACC_PRIVATE | ACC_FINAL, CHAIN_FIELD, CHAIN_DESC);
+
+        writeConstructor(cw, name);
+
+        for(Method m : methods.values()) {
+            writeMethod(cw, name, m, chain.dispatch(m), statics, staticDescs);
+        }
+        for(Method m : OBJECT_METHODS) {
+            writeMethod(cw, name, m, chain.dispatch(m), statics, staticDescs);
+        }
+
+        writeStaticInitializer(cw, name, staticDescs);
+
+        try {
+            Class<?> c = load(name, cw.toByteArray(), statics, interfaces, classes);
+            return c.getConstructor(InvocationChain.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Generates a class that calls the given handle, which must take
+     * (Object target, Object[] args) and return Object, from a static final
+     * field, so that the JIT can inline the call. Where the class can be
+     * defined in this package, as a hidden class, it is an Invoker itself;
+     * otherwise it is a BiFunction, called through a FunctionInvoker.
+     * Returns null if the class can't be made.
+     * @see Invoker
+     */
+    @SuppressWarnings("unchecked")
+    static Invoker promote(MethodHandle handle) {
+        Class<?>[] none = new Class<?>[0];
+        String pkg = Platform.packageFor(none, none);
+        // only a class in this runtime package can extend Invoker
+        boolean own = pkg.equals(HIDDEN_PACKAGE);
+        String name = pkg + "Invoker$" + counter.incrementAndGet();
+        String superName = own ? INVOKER : OBJECT;
+        ClassFileWriter cw = new ClassFileWriter(name, superName,
+            own ? new String[0] : new String[] { "java/util/function/BiFunction" });
+        List<Object> statics = new ArrayList<>();
+        List<String> staticDescs = new ArrayList<>();
+        String field = addStatic(cw, handle, "L" + HANDLE + ";", statics, staticDescs);
+
+        ClassFileWriter.Code code = cw.method(ACC_PUBLIC, "<init>", "()V", 1, 1);
+        code.local(ALOAD, 0).op(INVOKESPECIAL, cw.methodRef(superName, "<init>", "()V"));
+        code.op(RETURN);
+
+        // sN.invokeExact(target, (Object[]) args), rethrowing whatever it throws
+        if( own ) {
+            code = cw.method(0, "invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", 3, 3);
+            code.op(GETSTATIC, cw.fieldRef(name, field, "L" + HANDLE + ";"));
+            code.local(ALOAD, 1).local(ALOAD, 2);
+        } else {
+            code = cw.method(ACC_PUBLIC, "apply", "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;", 3, 3);
+            code.op(GETSTATIC, cw.fieldRef(name, field, "L" + HANDLE + ";"));
+            code.local(ALOAD, 1).local(ALOAD, 2).op(CHECKCAST, cw.classRef("[Ljava/lang/Object;"));
+        }
+        code.op(INVOKEVIRTUAL, cw.methodRef(HANDLE, "invokeExact",
+            "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;"));
+        code.op(ARETURN);
+
+        writeStaticInitializer(cw, name, staticDescs);
+
+        try {
+            Class<?> c = load(name, cw.toByteArray(), statics, none, none);
+            Object instance = c.getConstructor().newInstance();
+            return own ? (Invoker) instance
+                : new Invoker.FunctionInvoker((BiFunction<Object, Object[], Object>) instance);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Defines and initializes a generated class, handing it the values
+     * of its static fields as it does.
+     */
+    private static Class<?> load(String name, byte[] bytes, List<Object> statics,
+            Class<?>[] interfaces, Class<?>[] classes) throws ClassNotFoundException {
+        String className = dotted(name);
+        pending.put(className, statics.toArray());
+        try {
+            return Platform.define(className, bytes, interfaces, classes);
+        } finally {
+            pending.remove(className);
+        }
+    }
+
+    /**
+     * Defines and initializes a generated class in a class loader of its
+     * own, which can see the given interfaces and delegate classes.
+     */
+    static Class<?> defineInOwnLoader(String className, byte[] bytes, Class<?>[] interfaces, Class<?>[] classes)
+            throws ClassNotFoundException {
+        ShapeClassLoader loader = new ShapeClassLoader(interfaces, classes);
+        loader.define(className, bytes);
+        return Class.forName(className, true, loader);
+    }
+
+    private static String dotted(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * Returns all the instance methods of the interfaces, keyed by name and
+     * parameter types, leaving out the ones that are really Object's. Returns
+     * null if two interfaces disagree about the return type of a method.
+     */
+    private static Map<String, Method> interfaceMethods(Class<?>[] interfaces) {
+        Set<String> objectMethods = new LinkedHashSet<>();
+        for(Method m : OBJECT_METHODS) {
+            objectMethods.add(m.getName() + descriptor(void.class, m.getParameterTypes()));
+        }
+
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for(Class<?> i : interfaces) {
+            for(Method m : i.getMethods()) {
+                if( Modifier.isStatic(m.getModifiers()) ) {
+                    continue;
+                }
+                String key = m.getName() + descriptor(void.class, m.getParameterTypes());
+                if( objectMethods.contains(key) ) {
+                    continue;
+                }
+                Method existing = methods.putIfAbsent(key, m);
+                if( existing != null && existing.getReturnType() != m.getReturnType() ) {
+                    return null;
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * True if the target can be called straight from the generated class
+     * in place of the interface method.
+     */
+    private static boolean isDirect(Method m, Method target) {
+        return !Modifier.isStatic(target.getModifiers())
+            && target.getReturnType() == m.getReturnType()
+            && Arrays.equals(target.getParameterTypes(), m.getParameterTypes())
+            && Invoker.isPublic(target);
+    }
+
+    /**
+     * Returns a handle for the target taking (Object, interface parameters)
+     * and returning the interface's return type, or null if there isn't one.
+     */
+    private static MethodHandle exactHandle(Method m, Method target) {
+        MethodHandle mh = Invoker.unreflect(target);
+        if( mh == null ) {
+            return null;
+        }
+        try {
+            return Invoker.receiverFirst(mh, target).asType(
+                MethodType.methodType(m.getReturnType(), m.getParameterTypes())
+                    .insertParameterTypes(0, Object.class));
+        } catch (WrongMethodTypeException e) {
+            return null;
+        }
+    }
+
+    private static void writeConstructor(ClassFileWriter cw, String name) {
+        ClassFileWriter.Code code = cw.method(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, 2, 2);
+        code.local(ALOAD, 0).op(INVOKESPECIAL, cw.methodRef(OBJECT, "<init>", "()V"));
+        code.local(ALOAD, 0).local(ALOAD, 1).op(PUTFIELD, cw.fieldRef(name, CHAIN_FIELD, CHAIN_DESC));
+        code.op(RETURN);
+    }
+
+    /**
+     * Loads the delegate at the given position in the chain. This is
+     * fetched from the chain on every call so that replacements are seen.
+     */
+    private static void loadDelegate(ClassFileWriter cw, ClassFileWriter.Code code, String name, int index) {
+        code.local(ALOAD, 0).op(GETFIELD, cw.fieldRef(name, CHAIN_FIELD, CHAIN_DESC));
+        code.push(index).op(INVOKEVIRTUAL, cw.methodRef(CHAIN, "getDelegate", GET_DELEGATE_DESC));
+    }
+
+    private static void writeStaticInitializer(ClassFileWriter cw, String name, List<String> staticDescs) {
+        ClassFileWriter.Code code = cw.method(ACC_STATIC, "<clinit>", "()V", 3, 1);
+        code.op(INVOKESTATIC, cw.methodRef("java/lang/invoke/MethodHandles",
+            "lookup", "()" + LOOKUP_DESC));
+        code.op(INVOKESTATIC, cw.methodRef(internalName(GeneratedProxyEngine.class),
+            "bootstrap", "(" + LOOKUP_DESC + ")[Ljava/lang/Object;"));
+        code.local(ASTORE, 0);
+        for(int i=0; i<staticDescs.size(); i++) {
+            String desc = staticDescs.get(i);
+            code.local(ALOAD, 0).push(i).op(AALOAD);
+            code.op(CHECKCAST, cw.classRef(desc.substring(1, desc.length() - 1)));
+            code.op(PUTSTATIC, cw.fieldRef(name, "s" + i, desc));
+        }
+        code.op(RETURN);
+    }
+
+    /**
+     * Adds a static final field whose value will be handed to the class
+     * when it is initialized, returning its name.
+     */
+    private static String addStatic(ClassFileWriter cw, Object value, String desc,
+            List<Object> statics, List<String> staticDescs) {
+        String field = "s" + statics.size();
+        cw.field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, field, desc);
+        statics.add(value);
+        staticDescs.add(desc);
+        return field;
+    }
+
+    private static int parameterSlots(Method m) {
+        int slots = 0;
+        for(Class<?> p : m.getParameterTypes()) {
+            slots += slots(p);
+        }
+        return slots;
+    }
+
+    private static ClassFileWriter.Code loadParameters(ClassFileWriter.Code code, Method m) {
+        int slot = 1;
+        for(Class<?> p : m.getParameterTypes()) {
+            code.load(p, slot);
+            slot += slots(p);
+        }
+        return code;
+    }
+
+    /** ((Target) chain.getDelegate(N)).method(args...) */
+    private static void writeDirectCall(ClassFileWriter cw, String name, Method m, int index, Method target) {
+        int slots = parameterSlots(m);
+        String desc = descriptor(m.getReturnType(), m.getParameterTypes());
+        Class<?> owner = target.getDeclaringClass();
+        String ownerName = internalName(owner);
+
+        ClassFileWriter.Code code = cw.method(ACC_PUBLIC, m.getName(), desc, slots + 3, slots + 1);
+        loadDelegate(cw, code, name, index);
+        code.op(CHECKCAST, cw.classRef(ownerName));
+        loadParameters(code, m);
+        if( owner.isInterface() ) {
+            code.invokeInterface(cw.interfaceMethodRef(ownerName, m.getName(), desc), slots);
+        } else {
+            code.op(INVOKEVIRTUAL, cw.methodRef(ownerName, m.getName(), desc));
+        }
+        code.returns(m.getReturnType());
+    }
+
+    /**
+     * Writes the method, calling whatever it resolved to. Methods that
+     * the proxy answers for itself aren't written at all, so the class
+     * just inherits the interface's default, or Object's own, and the
+     * JIT sees them as such.
+     */
+    private static void writeMethod(ClassFileWriter cw, String name, Method m, DispatchPlan.Dispatch dispatch,
+            List<Object> statics, List<String> staticDescs) {
+        if( dispatch.onProxy && !dispatch.matched() ) {
+            return;
+        }
+        if( !dispatch.matched() ) {
+            writeChainCall(cw, name, m, statics, staticDescs);
+        } else if( dispatch.onProxy && m.getName().equals("equals") ) {
+            writeDelegateEquals(cw, name, dispatch.index);
+        } else if( isDirect(m, dispatch.method) ) {
+            writeDirectCall(cw, name, m, dispatch.index, dispatch.method);
+        } else {
+            MethodHandle mh = exactHandle(m, dispatch.method);
+            if( mh != null ) {
+                writeHandleCall(cw, name, m, dispatch.index, mh, statics, staticDescs);
+            } else {
+                writeChainCall(cw, name, m, statics, staticDescs);
+            }
+        }
+    }
+
+    /** chain.delegateEquals(N, this, other) */
+    private static void writeDelegateEquals(ClassFileWriter cw, String name, int index) {
+        ClassFileWriter.Code code = cw.method(ACC_PUBLIC, "equals", "(Ljava/lang/Object;)Z", 4, 2);
+        code.local(ALOAD, 0).op(GETFIELD, cw.fieldRef(name, CHAIN_FIELD, CHAIN_DESC));
+        code.push(index).local(ALOAD, 0).local(ALOAD, 1);
+        code.op(INVOKEVIRTUAL, cw.methodRef(CHAIN, "delegateEquals", "(ILjava/lang/Object;Ljava/lang/Object;)Z"));
+        code.op(IRETURN);
+    }
+
+    /** sN.invokeExact(chain.getDelegate(N), args...) */
+    private static void writeHandleCall(ClassFileWriter cw, String name, Method m, int index,
+            MethodHandle mh, List<Object> statics, List<String> staticDescs) {
+        int slots = parameterSlots(m);
+        String desc = descriptor(m.getReturnType(), m.getParameterTypes());
+        String field = addStatic(cw, mh, "L" + HANDLE + ";", statics, staticDescs);
+
+        ClassFileWriter.Code code = cw.method(ACC_PUBLIC, m.getName(), desc, slots + 4, slots + 1);
+        code.op(GETSTATIC, cw.fieldRef(name, field, "L" + HANDLE + ";"));
+        loadDelegate(cw, code, name, index);
+        loadParameters(code, m);
+        code.op(INVOKEVIRTUAL, cw.methodRef(HANDLE, "invokeExact", "(Ljava/lang/Object;" + desc.substring(1)));
+        code.returns(m.getReturnType());
+    }
+
+    /** chain.invoke(this, sN, new Object[] { args... }) */
+    private static void writeChainCall(ClassFileWriter cw, String name, Method m,
+            List<Object> statics, List<String> staticDescs) {
+        int slots = parameterSlots(m);
+        Class<?>[] params = m.getParameterTypes();
+        Class<?> returnType = m.getReturnType();
+        String desc = descriptor(returnType, params);
+        String field = addStatic(cw, m, "Ljava/lang/reflect/Method;", statics, staticDescs);
+
+        ClassFileWriter.Code code = cw.method(ACC_PUBLIC, m.getName(), desc, 10, slots + 1);
+        code.local(ALOAD, 0).op(GETFIELD, cw.fieldRef(name, CHAIN_FIELD, CHAIN_DESC));
+        code.local(ALOAD, 0);
+        code.op(GETSTATIC, cw.fieldRef(name, field, "Ljava/lang/reflect/Method;"));
+        code.push(params.length).op(ANEWARRAY, cw.classRef(OBJECT));
+        int slot = 1;
+        for(int i=0; i<params.length; i++) {
+            code.op(DUP).push(i).load(params[i], slot);
+            if( params[i].isPrimitive() ) {
+                String wrapper = internalName(wrapper(params[i]));
+                code.op(INVOKESTATIC, cw.methodRef(wrapper, "valueOf",
+                    "(" + descriptor(params[i]) + ")L" + wrapper + ";"));
+            }
+            code.op(AASTORE);
+            slot += slots(params[i]);
+        }
+        code.op(INVOKEVIRTUAL, cw.methodRef(CHAIN, "invoke", INVOKE_DESC));
+
+        if( returnType == void.class ) {
+            code.op(POP);
+        } else if( returnType.isPrimitive() ) {
+            String wrapper = internalName(wrapper(returnType));
+            code.op(CHECKCAST, cw.classRef(wrapper));
+            code.op(INVOKEVIRTUAL, cw.methodRef(wrapper, returnType.getName() + "Value",
+                "()" + descriptor(returnType)));
+        } else if( returnType != Object.class ) {
+            code.op(CHECKCAST, cw.classRef(internalName(returnType)));
+        }
+        code.returns(returnType);
+    }
+
+    private static Class<?> wrapper(Class<?> primitive) {
+        if( primitive == int.class ) return Integer.class;
+        if( primitive == long.class ) return Long.class;
+        if( primitive == boolean.class ) return Boolean.class;
+        if( primitive == byte.class ) return Byte.class;
+        if( primitive == char.class ) return Character.class;
+        if( primitive == short.class ) return Short.class;
+        if( primitive == float.class ) return Float.class;
+        return Double.class;
+    }
+
+    /**
+     * The interfaces and delegate classes that a generated class was made
+     * for, whether methods were matched loosely, and which methods each
+     * link can be called for, since those change which methods the
+     * class calls.
+     */
+    private static final class Shape {
+        private final Class<?>[] interfaces;
+        private final Class<?>[] classes;
+        private final boolean loose;
+        private final DispatchPlan.Scope[] scopes;
+        private final int hash;
+
+        Shape(Class<?>[] interfaces, Class<?>[] classes, boolean loose, DispatchPlan.Scope[] scopes) {
+            this.interfaces = interfaces;
+            this.classes = classes;
+            this.loose = loose;
+            this.scopes = scopes;
+            this.hash = 31 * (31 * (31 * Arrays.hashCode(interfaces) + Arrays.hashCode(classes))
+                + Boolean.hashCode(loose)) + Arrays.hashCode(scopes);
+        }
+
+        public boolean equals(Object o) {
+            if( !(o instanceof Shape) ) {
+                return false;
+            }
+            Shape other = (Shape) o;
+            return loose == other.loose
+                && Arrays.equals(interfaces, other.interfaces)
+                && Arrays.equals(classes, other.classes)
+                && Arrays.equals(scopes, other.scopes);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Defines a single generated class, which needs to be able to see the
+     * interfaces and delegate classes no matter where they were loaded from.
+     */
+    private static final class ShapeClassLoader extends ClassLoader {
+        private final ClassLoader[] sources;
+
+        ShapeClassLoader(Class<?>[] interfaces, Class<?>[] classes) {
+            super(GeneratedProxyEngine.class.getClassLoader());
+            Set<ClassLoader> loaders = new LinkedHashSet<>();
+            for(Class<?> c : interfaces) {
+                if( c.getClassLoader() != null ) {
+                    loaders.add(c.getClassLoader());
+                }
+            }
+            for(Class<?> c : classes) {
+                if( c.getClassLoader() != null ) {
+                    loaders.add(c.getClassLoader());
+                }
+            }
+            sources = loaders.toArray(new ClassLoader[loaders.size()]);
+        }
+
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            for(ClassLoader loader : sources) {
+                try {
+                    return Class.forName(name, false, loader);
+                } catch (ClassNotFoundException e) {
+                    // try the next one
+                }
+            }
+            throw new ClassNotFoundException(name);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+}
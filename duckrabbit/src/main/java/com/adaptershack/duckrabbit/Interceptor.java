@@ -0,0 +1,62 @@
+/*
+ * Interceptor.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+
+/**
+ * Runs around calls made through a proxy, for things like timing, retries,
+ * access checks and tracing that would otherwise each need a
+ * DynamicDelegator of their own, stacked one inside the other.
+ * <p>
+ * An interceptor is given the method being called, its arguments, and
+ * what comes next, which is either the next interceptor or the object the
+ * call resolved to. It can do something before or after calling
+ * next.proceed(), call it more than once, pass different arguments, or not
+ * call it at all and return something else. For example, a timer:
+ * <pre>
+ *   chain.addInterceptor((method, args, next) -&gt; {
+ *       long start = System.nanoTime();
+ *       try {
+ *           return next.proceed(args);
+ *       } finally {
+ *           record(method, System.nanoTime() - start);
+ *       }
+ *   });
+ * </pre>
+ * The interceptors that apply to each method are put together the first
+ * time it is called, so after that a call through N interceptors is N
+ * calls, with nothing allocated and no list to walk.
+ *
+ * @see InvocationChain#addInterceptor(Interceptor)
+ * @see InvocationChain#addInterceptor(java.util.function.Predicate, Interceptor)
+ */
+@FunctionalInterface
+public interface Interceptor {
+
+    /**
+     * Handles a call made through the proxy.
+     * @param method the interface method that was called
+     * @param args the arguments, or null if there are none
+     * @param next what the call goes on to
+     * @return what the proxy should return
+     */
+    Object intercept(Method method, Object[] args, Next next) throws Throwable;
+
+    /**
+     * The rest of the calls an interceptor is wrapped around.
+     */
+    @FunctionalInterface
+    interface Next {
+        /**
+         * Carries on with the call, with the given arguments, which are
+         * usually the ones the interceptor was given.
+         */
+        Object proceed(Object[] args) throws Throwable;
+    }
+
+}
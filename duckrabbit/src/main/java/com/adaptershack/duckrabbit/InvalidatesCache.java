@@ -0,0 +1,27 @@
+/*
+ * InvalidatesCache.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an interface method that changes what the Cached methods of the
+ * same object would return, so that calling it through a proxy with a
+ * ResultCache makes the cache forget everything it has remembered.
+ *
+ * @see Cached
+ * @see ResultCache
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface InvalidatesCache {
+}
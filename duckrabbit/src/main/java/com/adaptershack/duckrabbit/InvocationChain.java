@@ -0,0 +1,1046 @@
+/*
+ * InvocationChain.java
+ *
+ * Created on January 18, 2005, 10:46 PM
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+/**
+ * Uses reflection to create a chain of responsibility out of a
+ * collection of otherwise unrelated classes.
+ *
+ * @see java.lang.Proxy
+ * @see java.lang.InvocationHandler
+ * @see DynamicDelegator
+ *
+ * @author jRobertson
+ */
+public class InvocationChain implements InvocationHandler {
+    
+    private static final AtomicReferenceFieldUpdater<InvocationChain, Object[]> LINKS =
+        AtomicReferenceFieldUpdater.newUpdater(InvocationChain.class, Object[].class, "links");
+
+    private Set<Class<?>> interfaces = new LinkedHashSet<>();
+
+    /**
+     * The interfaces the proxy is made with: the ones above, without
+     * those implied by others, in a fixed order. Worked out when first
+     * needed, and thrown away whenever an interface is added.
+     */
+    private Class<?>[] proxyInterfaces;
+
+    /**
+     * The objects in the chain. The array is never modified once
+     * published; adding or replacing an object replaces it with a copy.
+     * Objects added with addLazy are held here as a LazyDelegate until
+     * they are made, and then swapped in the same way.
+     */
+    private volatile Object[] links = {};
+
+    /**
+     * Works out and remembers which link each method goes to.
+     * This is thrown away whenever an object is added, and made
+     * again when it is next needed.
+     */
+    private volatile DispatchPlan plan;
+
+    /**
+     * True once a proxy has been made, after which nothing more
+     * can be added to the chain.
+     */
+    private volatile boolean frozen;
+
+    /**
+     * Where calls are counted and timed, or null (the usual case)
+     * if they aren't.
+     */
+    private volatile InvocationMetrics metrics;
+
+    /**
+     * Holds back some calls to send them on in batches, or null (the
+     * usual case) if every call is made straight away.
+     */
+    private volatile CallBatcher callBatcher;
+
+    /**
+     * Runs some calls on other threads, or null (the usual case) if
+     * all calls run on the caller's thread.
+     */
+    private volatile AsyncDispatcher asyncDispatcher;
+
+    /**
+     * Remembers the results of calls, or null (the usual case) if
+     * nothing is remembered.
+     */
+    private volatile ResultCache resultCache;
+
+    /**
+     * Runs each call on every link that has the method, or null (the
+     * usual case) if each call goes to the first such link only.
+     */
+    private volatile Broadcaster broadcaster;
+
+    /**
+     * Limits how many calls can be in progress at once, or null (the
+     * usual case) if there's no limit.
+     */
+    private volatile Bulkhead bulkhead;
+
+    /**
+     * The interceptors, in the order they were added, and which methods
+     * each applies to. Empty in the usual case.
+     */
+    private final List<Interceptor> interceptors = new ArrayList<>();
+    private final List<Predicate<Method>> interceptorSelectors = new ArrayList<>();
+
+    /**
+     * The interceptors each method called so far goes through, put
+     * together into one Next, or null if there are no interceptors.
+     * Copied when added to, as with the dispatch table.
+     */
+    private volatile Map<Method, Interceptor.Next> pipelines;
+
+    /**
+     * True if none of the things above are set, so each call just goes
+     * to the link it resolves to. Checked first on every call, so that
+     * chains that use none of them pay for just this one check.
+     */
+    private volatile boolean plain = true;
+
+    /**
+     * If true, making a proxy fails if any interface method has
+     * nothing in the chain to handle it.
+     */
+    private boolean failFast;
+
+    /**
+     * If true, methods can also be matched by assignment-compatible
+     * parameter types, rather than only exactly. Volatile only so that
+     * chains this one's proxy is added to can see it.
+     */
+    private volatile boolean looseMatching;
+
+    /**
+     * The proxies whose links were taken into this chain by add, in the
+     * order they were added, or null if there weren't any. Only used
+     * while locked.
+     */
+    private List<Nested> nested;
+
+    /**
+     * Which methods each link can be called for, or null if every link
+     * can be called for any method, as is the case unless a proxy's links
+     * were taken into this chain. Only changed while locked.
+     */
+    private volatile DispatchPlan.Scope[] scopes;
+
+    /**
+     * The chains that this chain's proxy was added to, and whose links
+     * were taken into them, so they can be told when a link is replaced.
+     * Held weakly, by identity, and only used while it is locked.
+     */
+    private final Set<InvocationChain> outer = Collections.newSetFromMap(new WeakHashMap<>());
+    
+    /** Creates a new instance of InvocationChain */
+    public InvocationChain() {
+    }
+    
+    /** Creates a new instance of InvocationChain
+     *  with the given objects.
+     */
+    public InvocationChain(Object... toAdd) {
+        this();
+        for(Object o : toAdd) {
+            add(o);
+        }
+    }
+
+    /**
+     * Creates a chain of the given objects that uses a plan made
+     * ahead of time, and that is frozen from the start.
+     * @see ProxyTemplate
+     */
+    InvocationChain(DispatchPlan plan, Set<Class<?>> interfaces, Class<?>[] proxyInterfaces, Object[] links) {
+        this.plan = plan;
+        this.scopes = plan.getScopes();
+        this.interfaces = interfaces;
+        this.proxyInterfaces = proxyInterfaces;
+        this.links = links;
+        this.frozen = true;
+    }
+
+
+    /**
+     * Adds the specified object to the end of the chain.
+     * <p>
+     * If the object is itself a proxy made from an InvocationChain, by
+     * either engine, the objects in that chain are added instead, in the
+     * same order, so that a call only has to be dispatched once however
+     * many proxies were stacked up. Calls go to the same objects they
+     * would have gone to through the inner proxy, and the inner proxy
+     * itself still works as before, so a DynamicDelegator's thisProxy is
+     * unaffected. The one difference is that a method of the inner proxy's
+     * interfaces that nothing in its chain has goes on to the rest of this
+     * chain, rather than throwing UnsupportedOperationException. The inner
+     * chain's objects are only called for methods of the inner proxy's
+     * interfaces, just as they were through the proxy, even if they have
+     * other public methods that this chain's interfaces ask for.
+     * <p>
+     * This isn't done if the inner chain does something extra on each call,
+     * such as recording metrics, since that would be skipped, nor if this
+     * chain has a Broadcaster, which should call the inner proxy once.
+     * Objects replaced in the inner chain are replaced in this one too, and
+     * the inner proxy can itself be replaced with replace().
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public synchronized void add(Object o) {
+        checkNotFrozen();
+        InvocationChain inner = broadcaster == null ? nestedChain(o) : null;
+        Object[] toAdd = inner == null ? new Object[] { o } : inner.links;
+        Object[] added = Arrays.copyOf(links, links.length + toAdd.length);
+        System.arraycopy(toAdd, 0, added, links.length, toAdd.length);
+        if( inner != null ) {
+            if( nested == null ) {
+                nested = new ArrayList<>();
+            }
+            nested.add(new Nested(o, inner, links.length, toAdd.length));
+            inner.addOuter(this);
+            DispatchPlan.Scope[] grown = scopesFor(added.length);
+            System.arraycopy(scopesOf(o, inner), 0, grown, links.length, toAdd.length);
+            scopes = grown;
+        } else if( scopes != null ) {
+            scopes = scopesFor(added.length);
+        }
+        links = added;
+        plan = null;
+        ReflectionUtils.getAllInterfaces(o.getClass(), interfaces);
+        proxyInterfaces = null;
+    }
+
+    /**
+     * Returns the chain behind the given object if it is a proxy whose
+     * links can be added in its place, or null if it isn't.
+     */
+    private static InvocationChain nestedChain(Object o) {
+        InvocationChain inner = null;
+        if( Proxy.isProxyClass(o.getClass()) ) {
+            InvocationHandler h = Proxy.getInvocationHandler(o);
+            if( h instanceof InvocationChain ) {
+                inner = (InvocationChain) h;
+            }
+        } else {
+            inner = GeneratedProxyEngine.chainOf(o);
+        }
+        if( inner == null || inner.getClass() != InvocationChain.class || !inner.plain || inner.looseMatching ) {
+            return null;
+        }
+        return inner;
+    }
+
+    /**
+     * Returns the scopes for the links of a chain whose proxy is added
+     * in its place: each can only be called for methods of the proxy's
+     * interfaces, as well as whatever it was limited to already.
+     */
+    private static DispatchPlan.Scope[] scopesOf(Object proxy, InvocationChain inner) {
+        // a proxy class implements exactly the interfaces it was made with
+        Class<?>[] exposed = proxy.getClass().getInterfaces();
+        DispatchPlan.Scope[] limits = inner.scopes;
+        DispatchPlan.Scope[] result = new DispatchPlan.Scope[inner.links.length];
+        for(int i=0; i<result.length; i++) {
+            result[i] = new DispatchPlan.Scope(exposed, limits == null ? null : limits[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the scopes, lengthened to the given number of
+     * links, with the new ones unlimited.
+     */
+    private DispatchPlan.Scope[] scopesFor(int length) {
+        return scopes == null ? new DispatchPlan.Scope[length] : Arrays.copyOf(scopes, length);
+    }
+
+    /**
+     * Puts back the proxies whose links were added in their place.
+     */
+    private void unflatten() {
+        List<Object> restored = new ArrayList<>();
+        Object[] current = links;
+        int i = 0;
+        for(Nested n : nested) {
+            while( i < n.start ) {
+                restored.add(current[i++]);
+            }
+            restored.add(n.proxy);
+            i += n.length;
+            n.chain.forget(this);
+        }
+        while( i < current.length ) {
+            restored.add(current[i++]);
+        }
+        links = restored.toArray();
+        plan = null;
+        nested = null;
+        // only links taken from proxies were ever limited
+        scopes = null;
+    }
+
+    private void addOuter(InvocationChain chain) {
+        synchronized(outer) {
+            outer.add(chain);
+        }
+    }
+
+    private void forget(InvocationChain chain) {
+        synchronized(outer) {
+            outer.remove(chain);
+        }
+    }
+    
+    /**
+     * Adds an object to the end of the chain that won't be made until a
+     * call to the proxy needs it, which may be never. Methods are matched
+     * against the given type, which is also where the proxy gets its
+     * interfaces from; the supplier must return an instance of it. After
+     * the object has been made, calls to it take no locks.
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public <T> void addLazy(Class<T> type, Supplier<? extends T> supplier) {
+        addLazy(new LazyDelegate<T>(type, supplier));
+    }
+
+    /**
+     * Adds a lazily made object to the end of the chain.
+     */
+    synchronized void addLazy(LazyDelegate<?> lazy) {
+        checkNotFrozen();
+        Object[] added = Arrays.copyOf(links, links.length + 1);
+        added[links.length] = lazy;
+        if( scopes != null ) {
+            scopes = scopesFor(added.length);
+        }
+        links = added;
+        plan = null;
+        if( lazy.type.isInterface() ) {
+            interfaces.add(lazy.type);
+        }
+        ReflectionUtils.getAllInterfaces(lazy.type, interfaces);
+        proxyInterfaces = null;
+    }
+
+    /**
+     * Manually add this interface to this list of interfaces
+     * that will be implemented by this chain.
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public synchronized void addInterface(Class<?> c) {
+        checkNotFrozen();
+        interfaces.add(c);
+        proxyInterfaces = null;
+    }
+    
+    /**
+     * Manually add these interfaces to this list of interfaces
+     * that will be implemented by this chain.
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public synchronized void addInterfaces(Class<?>[] c) {
+        checkNotFrozen();
+        interfaces.addAll(Arrays.asList(c));
+        proxyInterfaces = null;
+    }    
+
+    /**
+     * Counts and times every call made through this chain's proxy,
+     * in the given metrics. The same metrics can be given to many
+     * chains. Pass null to stop recording.
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public synchronized void setMetrics(InvocationMetrics metrics) {
+        checkNotFrozen();
+        this.metrics = metrics;
+        plain = isPlainNow();
+    }
+
+    /**
+     * Returns the metrics this chain records calls in, or null if
+     * it doesn't.
+     */
+    public InvocationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Holds back the calls made through this chain's proxy that the given
+     * batcher selects, and sends them on in batches. Pass null to make
+     * every call straight away.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see CallBatcher
+     */
+    public synchronized void setCallBatcher(CallBatcher callBatcher) {
+        checkNotFrozen();
+        this.callBatcher = callBatcher;
+        plain = isPlainNow();
+    }
+
+    /**
+     * Returns the batcher that holds back some calls, or null if
+     * there isn't one.
+     */
+    public CallBatcher getCallBatcher() {
+        return callBatcher;
+    }
+
+    /**
+     * Runs the calls made through this chain's proxy that the given
+     * dispatcher selects on other threads. Pass null to run them all on
+     * the caller's thread.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see AsyncDispatcher
+     */
+    public synchronized void setAsyncDispatcher(AsyncDispatcher asyncDispatcher) {
+        checkNotFrozen();
+        this.asyncDispatcher = asyncDispatcher;
+        plain = isPlainNow();
+    }
+
+    /**
+     * Returns the dispatcher that runs some calls on other threads,
+     * or null if there isn't one.
+     */
+    public AsyncDispatcher getAsyncDispatcher() {
+        return asyncDispatcher;
+    }
+
+    /**
+     * Runs each call made through this chain's proxy on every object in
+     * the chain that has the method, rather than only the first, and
+     * combines the results as the broadcaster says. Pass null to go back
+     * to the first object only.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see Broadcaster
+     */
+    public synchronized void setBroadcaster(Broadcaster broadcaster) {
+        checkNotFrozen();
+        if( broadcaster != null && nested != null ) {
+            unflatten();
+        }
+        this.broadcaster = broadcaster;
+        plain = isPlainNow();
+    }
+
+    /**
+     * Returns the broadcaster that runs calls on every object, or
+     * null if there isn't one.
+     */
+    public Broadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    /**
+     * Remembers the results of calls made through this chain's proxy in
+     * the given cache, which decides which methods are worth remembering.
+     * Pass null to stop caching.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see ResultCache
+     */
+    public synchronized void setResultCache(ResultCache resultCache) {
+        checkNotFrozen();
+        this.resultCache = resultCache;
+        plain = isPlainNow();
+    }
+
+    /**
+     * Returns the cache this chain remembers results in, or null if
+     * it doesn't.
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Limits how many calls made through this chain's proxy can be in
+     * progress at once, as the given bulkhead says. Pass null for no limit.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see Bulkhead
+     */
+    public synchronized void setBulkhead(Bulkhead bulkhead) {
+        checkNotFrozen();
+        this.bulkhead = bulkhead;
+        plain = isPlainNow();
+    }
+
+    /**
+     * Returns the bulkhead limiting calls through this chain, or null
+     * if there isn't one.
+     */
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Runs every call made through this chain's proxy through the given
+     * interceptor. Interceptors run in the order they were added, the
+     * first one outermost.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see Interceptor
+     */
+    public void addInterceptor(Interceptor interceptor) {
+        addInterceptor(m -> true, interceptor);
+    }
+
+    /**
+     * Runs calls to the methods for which the given test is true through
+     * the given interceptor. The test is done once for each method, the
+     * first time it is called.
+     * @throws IllegalStateException if a proxy has already been made
+     * @see Interceptor
+     */
+    public synchronized void addInterceptor(Predicate<Method> selector, Interceptor interceptor) {
+        checkNotFrozen();
+        interceptorSelectors.add(selector);
+        interceptors.add(interceptor);
+        pipelines = new IdentityHashMap<>();
+        plain = isPlainNow();
+    }
+
+    /**
+     * If set, newProxyInstance will throw UnsupportedOperationException,
+     * listing the methods concerned, if there are any interface methods
+     * that nothing in the chain has. Otherwise (the default) the proxy
+     * is made anyway and only those methods throw, when they're called.
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public synchronized void setFailFast(boolean failFast) {
+        checkNotFrozen();
+        this.failFast = failFast;
+    }
+
+    /**
+     * If set, an interface method that nothing in the chain has with
+     * exactly the same parameter types can also go to a public method of
+     * the same name that the arguments could be passed to in Java: one
+     * taking a supertype, a wider primitive, or the boxed or unboxed
+     * version of a type. As with overloading in Java, methods that need
+     * no boxing are preferred, and of those that fit, the most specific
+     * is chosen; if none is more specific than the rest, the method isn't
+     * matched at all. The result is converted to the interface's return
+     * type in the same way. This is all worked out once per method and
+     * class, like the rest of the plan, so it costs nothing on each call.
+     * Proxies from chains with this set aren't flattened into others.
+     * @throws IllegalStateException if a proxy has already been made
+     */
+    public synchronized void setLooseMatching(boolean looseMatching) {
+        checkNotFrozen();
+        this.looseMatching = looseMatching;
+        plan = null;
+    }
+
+    /**
+     * Returns the methods of the chain's interfaces that nothing in the
+     * chain has, and that will throw UnsupportedOperationException if
+     * they're called on the proxy.
+     */
+    public List<Method> getUnimplementedMethods() {
+        return getPlan().unimplemented(getInterfaces());
+    }
+
+    /**
+     * Returns true if calling the proxy does nothing more than call the
+     * method each link resolves to, so an engine can skip invoke() and
+     * call the delegate directly.
+     */
+    boolean isPlain() {
+        return plain;
+    }
+
+    private boolean isPlainNow() {
+        return metrics == null && callBatcher == null && asyncDispatcher == null
+            && resultCache == null && broadcaster == null && bulkhead == null
+            && interceptors.isEmpty();
+    }
+
+    private void checkNotFrozen() {
+        if( frozen ) {
+            throw new IllegalStateException("this chain already has a proxy, and can't be changed");
+        }
+    }
+
+    /**
+     * Swaps one object in the chain for another, while leaving the
+     * proxy in place. The replacement must be of exactly the same class as
+     * the object it replaces, so that everything already worked out about
+     * the chain still holds. Calls that are already under way finish on
+     * the old object; calls made after this returns go to the new one.
+     * <p>
+     * Nothing is locked, either here or when the proxy is called. If two
+     * threads try to replace the same object at once, only one will
+     * succeed, so this can safely be used for things like failing over
+     * to a replica.
+     * <p>
+     * A proxy whose objects were added in its place can be replaced by
+     * another proxy of the same class, whose chain has objects of the same
+     * classes; its objects are then swapped in all at once.
+     *
+     * @return true if the object was replaced, or false if the current
+     * object was not (or is no longer) in the chain
+     * @throws IllegalArgumentException if the replacement is not of the
+     * same class as the object it replaces
+     */
+    public boolean replace(Object current, Object replacement) {
+        for(;;) {
+            Object[] before = links;
+            int index = -1;
+            for(int i=0; i<before.length; i++) {
+                if( before[i] == current || before[i] instanceof LazyDelegate
+                        && ((LazyDelegate<?>) before[i]).peek() == current ) {
+                    index = i;
+                    break;
+                }
+            }
+            if( index < 0 ) {
+                return replaceNested(current, replacement);
+            }
+            if( replacement == null || replacement.getClass() != current.getClass() ) {
+                throw new IllegalArgumentException("replacement must be a " + current.getClass().getName());
+            }
+            Object[] after = before.clone();
+            after[index] = replacement;
+            if( LINKS.compareAndSet(this, before, after) ) {
+                replaced(current, replacement);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Replaces a proxy whose objects were added in its place with the
+     * objects of another.
+     */
+    private synchronized boolean replaceNested(Object current, Object replacement) {
+        Nested n = null;
+        for(int i=0; nested != null && i<nested.size() && n == null; i++) {
+            if( nested.get(i).proxy == current ) {
+                n = nested.get(i);
+            }
+        }
+        if( n == null ) {
+            return false;
+        }
+        InvocationChain inner = replacement == null || replacement.getClass() != current.getClass()
+            ? null : nestedChain(replacement);
+        Class<?>[] classes = getPlan().getClasses();
+        if( inner == null || !Arrays.equals(inner.getPlan().getClasses(),
+                Arrays.copyOfRange(classes, n.start, n.start + n.length))
+                || !Arrays.equals(scopesOf(replacement, inner),
+                    Arrays.copyOfRange(scopes, n.start, n.start + n.length)) ) {
+            throw new IllegalArgumentException("replacement must be a " + current.getClass().getName()
+                + " whose chain has objects of the same classes");
+        }
+        Object[] before;
+        Object[] after;
+        Object[] swapped = inner.links;
+        do {
+            before = links;
+            after = before.clone();
+            System.arraycopy(swapped, 0, after, n.start, n.length);
+        } while( !LINKS.compareAndSet(this, before, after) );
+
+        n.chain.forget(this);
+        inner.addOuter(this);
+        n.proxy = replacement;
+        n.chain = inner;
+        for(int i=0; i<n.length; i++) {
+            if( before[n.start + i] != after[n.start + i]
+                    && before[n.start + i].getClass() == after[n.start + i].getClass() ) {
+                replaced(before[n.start + i], after[n.start + i]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Passes a replacement on to the chains this chain's links were
+     * added to.
+     */
+    private void replaced(Object current, Object replacement) {
+        InvocationChain[] chains;
+        synchronized(outer) {
+            if( outer.isEmpty() ) {
+                return;
+            }
+            chains = outer.toArray(new InvocationChain[outer.size()]);
+        }
+        for(InvocationChain chain : chains) {
+            chain.replace(current, replacement);
+        }
+    }
+    
+    /**
+     * This method implements the InvocationHandler interface. The chain
+     * of responsibility will be searched until a method of the required
+     * name and argument types is found, and that method will then be
+     * invoked. The search stops after finding the first occurrence of
+     * a method in the chain, so the order in which the objects were
+     * added is important. The result of the search is remembered, so
+     * each method is only looked up the first time it is called. That
+     * goes for methods that nothing in the chain has, too, which throw
+     * UnsupportedOperationException, unless the interface has a default
+     * for them, in which case that is run on the proxy.
+     * <p>
+     * equals, hashCode and toString are the proxy's own, by identity,
+     * unless something in the chain has its own toString, in which case
+     * all three go to the first such object, and the proxy stands for it.
+     * Those, and default methods run on the proxy, are answered straight
+     * away, without going through interceptors, metrics or anything else.
+     */
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        
+        Dispatch dispatch = dispatch(method);
+        if( dispatch.onProxy ) {
+            if( dispatch.index < 0 ) {
+                return dispatch.invoker.invoke(proxy, args);
+            }
+            // the proxy stands for the link, so it is equal to itself
+            if( method.getName().equals("equals") ) {
+                return delegateEquals(dispatch.index, proxy, args[0]);
+            }
+            return dispatch.invoker.invoke(link(dispatch.index), args);
+        }
+        if( plain ) {
+            return call(dispatch, args);
+        }
+        InvocationMetrics m = metrics;
+        if( m != null ) {
+            return invokeMetered(m, dispatch, method, args);
+        }
+        return proceed(dispatch, method, args);
+    }
+
+    /**
+     * Runs the call through the interceptors for its method, if there
+     * are any, and then on to the rest.
+     */
+    private Object proceed(Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        Map<Method, Interceptor.Next> p = pipelines;
+        if( p == null ) {
+            return send(dispatch, method, args);
+        }
+        Interceptor.Next pipeline = p.get(method);
+        if( pipeline == null ) {
+            pipeline = compile(dispatch, method);
+        }
+        return pipeline.proceed(args);
+    }
+
+    /**
+     * Puts together, once, the interceptors a method goes through, with
+     * the first selected outermost and the rest of the call innermost.
+     */
+    private synchronized Interceptor.Next compile(Dispatch dispatch, Method method) {
+        Interceptor.Next pipeline = pipelines.get(method);
+        if( pipeline != null ) {
+            return pipeline;
+        }
+        pipeline = args -> send(dispatch, method, args);
+        for(int i=interceptors.size()-1; i>=0; i--) {
+            if( interceptorSelectors.get(i).test(method) ) {
+                Interceptor interceptor = interceptors.get(i);
+                Interceptor.Next next = pipeline;
+                pipeline = args -> interceptor.intercept(method, args, next);
+            }
+        }
+        Map<Method, Interceptor.Next> table = new IdentityHashMap<>(pipelines);
+        table.put(method, pipeline);
+        pipelines = table;
+        return pipeline;
+    }
+
+    /**
+     * Calls whatever the method resolved to, unless there is a
+     * CallBatcher that wants to hold the call back.
+     */
+    private Object send(Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        CallBatcher b = callBatcher;
+        if( b != null ) {
+            return b.invoke(this, dispatch, method, args);
+        }
+        return submit(dispatch, method, args);
+    }
+
+    /**
+     * Calls whatever the method resolved to, on another thread if
+     * there is an AsyncDispatcher that wants it to be.
+     */
+    Object submit(Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        AsyncDispatcher a = asyncDispatcher;
+        if( a != null ) {
+            return a.invoke(this, dispatch, method, args);
+        }
+        return invokeNow(dispatch, method, args);
+    }
+
+    /**
+     * Calls whatever the method resolved to, on this thread, unless
+     * the result is already in the cache.
+     */
+    Object invokeNow(Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        ResultCache c = resultCache;
+        if( c != null ) {
+            return c.invoke(this, dispatch, method, args);
+        }
+        return callTarget(dispatch, method, args);
+    }
+
+    /**
+     * Calls whatever the method resolved to, once the Bulkhead, if there
+     * is one, has room for it.
+     */
+    Object callTarget(Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        Bulkhead h = bulkhead;
+        if( h != null && dispatch.index >= 0 ) {
+            return h.invoke(this, dispatch, method, args);
+        }
+        return callLinks(dispatch, method, args);
+    }
+
+    /**
+     * Calls whatever the method resolved to, or if there is a
+     * Broadcaster, everything in the chain that has the method.
+     */
+    Object callLinks(Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        Broadcaster b = broadcaster;
+        if( b != null && dispatch.index >= 0 ) {
+            return b.invoke(this, method, args);
+        }
+        return call(dispatch, args);
+    }
+
+    /**
+     * Calls whatever the method resolved to. Methods that nothing in the
+     * chain has were found to be missing the first time they were called,
+     * so they throw straight away.
+     */
+    Object call(Dispatch dispatch, Object[] args) throws Throwable {
+        if( dispatch.index < 0 ) {
+            throw new UnsupportedOperationException(dispatch.unsupported);
+        }
+        return dispatch.invoker.invoke(link(dispatch.index), args);
+    }
+
+    /**
+     * Returns the object at the given position in the chain, making
+     * it first if it was added with addLazy and hasn't been made yet.
+     */
+    private Object link(int index) {
+        Object link = links[index];
+        if( link instanceof LazyDelegate ) {
+            link = materialize((LazyDelegate<?>) link);
+        }
+        return link;
+    }
+
+    /**
+     * Makes a lazy object, and puts it in the chain in place of the
+     * LazyDelegate, so that later calls go straight to it.
+     */
+    private Object materialize(LazyDelegate<?> lazy) {
+        Object value = lazy.get();
+        for(;;) {
+            Object[] before = links;
+            int index = indexOf(before, lazy);
+            if( index < 0 ) {
+                return value;
+            }
+            Object[] after = before.clone();
+            after[index] = value;
+            if( LINKS.compareAndSet(this, before, after) ) {
+                return value;
+            }
+        }
+    }
+
+    private static int indexOf(Object[] array, Object o) {
+        for(int i=0; i<array.length; i++) {
+            if( array[i] == o ) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calls whatever the method resolved to, and records the call.
+     */
+    private Object invokeMetered(InvocationMetrics m, Dispatch dispatch, Method method, Object[] args)
+            throws Throwable {
+        InvocationMetrics.MethodStats stats = m.stats(method);
+        boolean threw = true;
+        long start = System.nanoTime();
+        try {
+            Object result = proceed(dispatch, method, args);
+            threw = false;
+            return result;
+        } finally {
+            stats.record(dispatch.index, System.nanoTime() - start, threw);
+        }
+    }
+
+    /**
+     * Returns what the given method resolves to, searching the chain
+     * only if this method has not been seen before.
+     */
+    Dispatch dispatch(Method method) {
+        return getPlan().dispatch(method);
+    }
+
+    /**
+     * Returns every link that has the given method, in chain order.
+     */
+    Dispatch[] dispatchAll(Method method) {
+        return getPlan().dispatchAll(method);
+    }
+
+    /**
+     * Returns the plan for the objects currently in the chain,
+     * making it if need be.
+     */
+    DispatchPlan getPlan() {
+        DispatchPlan p = plan;
+        if( p == null ) {
+            synchronized(this) {
+                p = plan;
+                if( p == null ) {
+                    Class<?>[] classes = new Class<?>[links.length];
+                    for(int i=0; i<classes.length; i++) {
+                        Object link = links[i];
+                        classes[i] = link instanceof LazyDelegate
+                            ? ((LazyDelegate<?>) link).type : link.getClass();
+                    }
+                    p = new DispatchPlan(classes, looseMatching, scopes);
+                    plan = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns the set of all interfaces implemented by
+     * any objects in the chain.
+     */
+    public synchronized Class<?>[] getInterfaces() {
+        Class<?>[] intArray = new Class[interfaces.size()];
+        return (Class<?>[]) interfaces.toArray(intArray);
+    }
+
+    /**
+     * Returns the interfaces a proxy for this chain should be made with.
+     * These are the fewest that still cover all of getInterfaces(),
+     * sorted by name, so that chains of the same classes, or with the same
+     * interfaces added in a different order, get the same proxy class.
+     * The array must not be modified.
+     * @see ReflectionUtils#getMinimalInterfaces(Collection)
+     */
+    synchronized Class<?>[] getProxyInterfaces() {
+        if( proxyInterfaces == null ) {
+            proxyInterfaces = ReflectionUtils.getMinimalInterfaces(interfaces);
+        }
+        return proxyInterfaces;
+    }
+    
+    /**
+     * Returns the objects in the chain, in the order they were added.
+     * Any that were added lazily and haven't been made yet appear as
+     * a LazyDelegate. The array must not be modified.
+     */
+    Object[] getDelegates() {
+        return links;
+    }
+
+    /**
+     * Returns the object at the given position in the chain. This is
+     * how generated proxies get hold of their delegates, so that they see
+     * any that have been replaced.
+     */
+    public Object getDelegate(int index) {
+        return link(index);
+    }
+
+    /**
+     * Compares the object at the given position in the chain, which the
+     * given proxy stands for, with another object. The proxy itself is
+     * compared as that object, so a proxy is always equal to itself. This
+     * is how proxies implement equals when an object in the chain has its
+     * own toString.
+     */
+    public boolean delegateEquals(int index, Object proxy, Object other) {
+        Object link = link(index);
+        return link.equals(other == proxy ? link : other);
+    }
+    
+    /**
+     * Creates a proxy that implements all interfaces that are
+     * implemented by any object in the chain, using the default
+     * engine to make it. Once this has been called, the chain can't
+     * be added to.
+     * @see ProxyEngine#getDefault()
+     */
+    public Object newProxyInstance() {
+        return newProxyInstance(ProxyEngine.getDefault());
+    }
+
+    /**
+     * Creates a proxy that implements all interfaces that are
+     * implemented by any object in the chain, using the given
+     * engine to make it. Once this has been called, the chain
+     * can't be added to.
+     * @throws UnsupportedOperationException if the chain is set to fail
+     * fast, and some interface methods aren't implemented
+     * @see ProxyEngine
+     */
+    public Object newProxyInstance(ProxyEngine engine) {
+        synchronized(this) {
+            if( failFast ) {
+                List<Method> missing = getUnimplementedMethods();
+                if( !missing.isEmpty() ) {
+                    StringBuilder sb = new StringBuilder("nothing in the chain implements:");
+                    for(Method m : missing) {
+                        sb.append("\n    ").append(m);
+                    }
+                    throw new UnsupportedOperationException(sb.toString());
+                }
+            }
+            frozen = true;
+        }
+        return engine.newProxyInstance(this);
+    }
+
+    /**
+     * A proxy whose links were added in its place, and where they are.
+     */
+    private static final class Nested {
+        Object proxy;
+        InvocationChain chain;
+        final int start;
+        final int length;
+
+        Nested(Object proxy, InvocationChain chain, int start, int length) {
+            this.proxy = proxy;
+            this.chain = chain;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+}
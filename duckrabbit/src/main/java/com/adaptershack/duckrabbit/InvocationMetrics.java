@@ -0,0 +1,243 @@
+/*
+ * InvocationMetrics.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts and times the calls made through one or more proxies. For each
+ * interface method this records how many calls there were, how many went
+ * to the first link in the chain (which, for a DynamicDelegator, means
+ * the method was overridden) and how many to later links, how many
+ * failed because nothing in the chain implements the method, how many
+ * threw, and a histogram of how long they took.
+ * <p>
+ * Nothing here takes a lock. Counters are LongAdders, and the histogram
+ * is an array of power-of-two buckets updated atomically, so many threads
+ * can record at once without getting in each other's way. Read the
+ * numbers with snapshot(), or over JMX by calling register().
+ * <p>
+ * One instance can be shared by any number of chains, in which case
+ * the numbers are totals across all of them. Chains with no metrics
+ * set do not pay anything for this feature.
+ *
+ * @see InvocationChain#setMetrics(InvocationMetrics)
+ * @see DynamicDelegator#getMetrics()
+ */
+public class InvocationMetrics implements InvocationMetricsMXBean {
+
+    /** One histogram bucket for each power of two nanoseconds. */
+    static final int BUCKETS = 64;
+
+    private final Map<Method, MethodStats> stats = new ConcurrentHashMap<>();
+
+    /** Creates a new, empty set of metrics. */
+    public InvocationMetrics() {
+    }
+
+    /**
+     * Returns the stats for a method, creating them on first use.
+     */
+    MethodStats stats(Method method) {
+        MethodStats s = stats.get(method);
+        if( s == null ) {
+            s = stats.computeIfAbsent(method, MethodStats::new);
+        }
+        return s;
+    }
+
+    /**
+     * Returns the current numbers for every method that has been called.
+     * The numbers for each method are read without stopping anyone from
+     * recording new ones, so they may be very slightly out of step with
+     * each other.
+     */
+    public List<MethodSnapshot> snapshot() {
+        List<MethodSnapshot> result = new ArrayList<>();
+        for(MethodStats s : stats.values()) {
+            result.add(s.snapshot());
+        }
+        result.sort((a, b) -> a.getMethod().compareTo(b.getMethod()));
+        return result;
+    }
+
+    public List<MethodSnapshot> getMethods() {
+        return snapshot();
+    }
+
+    public long getTotalCalls() {
+        long total = 0;
+        for(MethodStats s : stats.values()) {
+            total += s.calls.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under
+     * the given object name, e.g. "com.example:type=ConnectionMetrics".
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    /**
+     * The counters for a single method.
+     */
+    static final class MethodStats {
+        final String method;
+        final LongAdder calls = new LongAdder();
+        final LongAdder overridden = new LongAdder();
+        final LongAdder delegated = new LongAdder();
+        final LongAdder unsupported = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        MethodStats(Method method) {
+            this.method = method.toString();
+        }
+
+        /**
+         * Records one call, made to the link at the given position in the
+         * chain, or -1 if there was no such link.
+         */
+        void record(int link, long nanos, boolean threw) {
+            calls.increment();
+            if( link == 0 ) {
+                overridden.increment();
+            } else if( link > 0 ) {
+                delegated.increment();
+            } else {
+                unsupported.increment();
+            }
+            if( threw ) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            histogram.incrementAndGet(bucket(nanos));
+        }
+
+        MethodSnapshot snapshot() {
+            long[] buckets = new long[BUCKETS];
+            for(int i=0; i<BUCKETS; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return new MethodSnapshot(method, calls.sum(), overridden.sum(), delegated.sum(),
+                unsupported.sum(), errors.sum(), totalNanos.sum(), buckets);
+        }
+    }
+
+    /**
+     * Returns the histogram bucket for a duration, which is the
+     * position of its highest bit.
+     */
+    static int bucket(long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * The numbers for a single method at a point in time.
+     */
+    public static final class MethodSnapshot {
+        private final String method;
+        private final long calls;
+        private final long overridden;
+        private final long delegated;
+        private final long unsupported;
+        private final long errors;
+        private final long totalNanos;
+        private final long[] histogram;
+
+        MethodSnapshot(String method, long calls, long overridden, long delegated,
+                long unsupported, long errors, long totalNanos, long[] histogram) {
+            this.method = method;
+            this.calls = calls;
+            this.overridden = overridden;
+            this.delegated = delegated;
+            this.unsupported = unsupported;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.histogram = histogram;
+        }
+
+        /** The interface method. */
+        public String getMethod() { return method; }
+
+        /** The total number of calls. */
+        public long getCalls() { return calls; }
+
+        /** Calls handled by the first link in the chain. */
+        public long getOverridden() { return overridden; }
+
+        /** Calls handled by a later link in the chain. */
+        public long getDelegated() { return delegated; }
+
+        /** Calls that nothing in the chain could handle. */
+        public long getUnsupported() { return unsupported; }
+
+        /** Calls that threw an exception, including unsupported ones. */
+        public long getErrors() { return errors; }
+
+        /** The mean time taken by a call, in nanoseconds. */
+        public long getMeanNanos() { return calls == 0 ? 0 : totalNanos / calls; }
+
+        /** The median time taken by a call, to within a factor of two. */
+        public long getP50Nanos() { return getPercentileNanos(50); }
+
+        /** The 99th percentile time taken by a call, to within a factor of two. */
+        public long getP99Nanos() { return getPercentileNanos(99); }
+
+        /**
+         * The number of calls in each bucket of the histogram. Bucket
+         * n counts calls that took from 2^n up to 2^(n+1) nanoseconds.
+         */
+        public long[] getHistogram() { return histogram.clone(); }
+
+        /**
+         * Returns the time that the given percentage of calls took no
+         * longer than, to within a factor of two.
+         */
+        public long getPercentileNanos(double percent) {
+            long wanted = (long) Math.ceil(calls * percent / 100.0);
+            long seen = 0;
+            for(int i=0; i<histogram.length; i++) {
+                seen += histogram[i];
+                if( seen >= wanted && seen > 0 ) {
+                    return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                }
+            }
+            return 0;
+        }
+
+        public String toString() {
+            return method + ": calls=" + calls + " overridden=" + overridden
+                + " delegated=" + delegated + " unsupported=" + unsupported
+                + " errors=" + errors + " mean=" + getMeanNanos() + "ns p99=" + getP99Nanos() + "ns";
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * InvocationMetricsMXBean.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.util.List;
+
+import com.adaptershack.duckrabbit.InvocationMetrics.MethodSnapshot;
+
+/**
+ * The view of InvocationMetrics that is offered over JMX.
+ * @see InvocationMetrics#register(String)
+ */
+public interface InvocationMetricsMXBean {
+
+    /** The numbers for every method that has been called. */
+    List<MethodSnapshot> getMethods();
+
+    /** The total number of calls across all methods. */
+    long getTotalCalls();
+
+    /** Forgets everything recorded so far. */
+    void reset();
+
+}
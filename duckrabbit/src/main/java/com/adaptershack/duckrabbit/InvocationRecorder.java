@@ -0,0 +1,466 @@
+/*
+ * InvocationRecorder.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes down every call that passes through a proxy, with when it was
+ * made, how long it took, whether it threw, and a summary of each of its
+ * arguments, to a file that can be read back with InvocationRecording.
+ * This is meant for finding out what the code behind a wrapped interface
+ * is really asked to do in production, and for replaying that later.
+ * <p>
+ * A recorder is an Interceptor, so it is added to a chain (or a
+ * DynamicDelegator) like any other:
+ * <pre>
+ *   InvocationRecorder recorder = new InvocationRecorder(Paths.get("calls.rec"));
+ *   chain.addInterceptor(recorder);
+ * </pre>
+ * Recording a call never blocks the caller, and allocates nothing. Each
+ * call is written as a fixed-size record into a ring buffer that callers
+ * claim slots in without locking; a single background thread copies
+ * records from there into the file, which is memory mapped a segment at
+ * a time. If the ring is full because the disk can't keep up, the call is
+ * left out and counted in getDropped, rather than making the caller wait.
+ * <p>
+ * Arguments are summarized rather than stored: primitives and their
+ * wrappers exactly, strings and arrays by their length, enums by their
+ * ordinal, and anything else by its identity hash code. Summarizing never
+ * calls a method of the argument, so a collection is recorded by its
+ * identity, not its size, which could be slow to find or could throw.
+ * Only the first MAX_ARGS arguments of each call are summarized.
+ * <p>
+ * The file is complete once close() has been called. If the program dies
+ * first, what was written so far can still be read.
+ *
+ * @see InvocationRecording
+ */
+public class InvocationRecorder implements Interceptor, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(InvocationRecorder.class.getName());
+
+    /** The most arguments of a call that are summarized. */
+    public static final int MAX_ARGS = 8;
+
+    /** Identifies a recording, at the start of the file. */
+    static final long MAGIC = 0x4452524543303031L; // "DRREC001"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+
+    static final int RECORD_WORDS = 16;
+    static final int RECORD_BYTES = RECORD_WORDS * 8;
+
+    /** Record types, in the low byte of each record's first word. */
+    static final int CALL = 1;
+    static final int METHOD = 2;
+
+    static final int THREW = 1;
+
+    /** Where the signature bytes of a METHOD record start, and how many fit. */
+    static final int NAME_WORD = 2;
+    static final int NAME_BYTES = (RECORD_WORDS - NAME_WORD) * 8;
+
+    /** Argument tags. */
+    static final int NULL = 1;
+    static final int BOOLEAN = 2;
+    static final int BYTE = 3;
+    static final int SHORT = 4;
+    static final int CHAR = 5;
+    static final int INT = 6;
+    static final int LONG = 7;
+    static final int FLOAT = 8;
+    static final int DOUBLE = 9;
+    static final int STRING = 10;
+    static final int ARRAY = 11;
+    static final int ENUM = 12;
+    static final int OTHER = 13;
+
+    private static final int SEGMENT_BYTES = 4 << 20;
+
+    private final int capacity;
+    private final long[] ring;
+
+    /**
+     * The sequence number written into each slot once its record is
+     * complete, which is how the writer thread knows it can take it.
+     */
+    private final AtomicLongArray published;
+
+    /** The next sequence number to be claimed. */
+    private final AtomicLong head = new AtomicLong();
+
+    /** The next sequence number to be written to the file. */
+    private volatile long tail;
+
+    private final long epochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private final long nanoBase = System.nanoTime();
+
+    /**
+     * The id of each method seen so far. Copied when added to, as
+     * with the dispatch table.
+     */
+    private volatile Map<Method, Integer> methodIds = new IdentityHashMap<>();
+    private final Map<String, Integer> idsBySignature = new HashMap<>();
+
+    /**
+     * The next id to give out. Ids are never reused, even for a method
+     * whose name couldn't all be written, since part of it may have been.
+     */
+    private int nextId;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private final FileChannel channel;
+    private MappedByteBuffer out;
+    private long outBase;
+    private long written = HEADER_BYTES;
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a recorder that writes to the given file, replacing it if
+     * it exists, with room for 8192 calls waiting to be written.
+     */
+    public InvocationRecorder(Path file) throws IOException {
+        this(file, 8192);
+    }
+
+    /**
+     * Creates a recorder that writes to the given file, replacing it if
+     * it exists, with room for the given number of calls waiting to be
+     * written, which is rounded up to a power of two.
+     */
+    public InvocationRecorder(Path file, int bufferedCalls) throws IOException {
+        if( bufferedCalls <= 0 ) {
+            throw new IllegalArgumentException("bufferedCalls must be positive");
+        }
+        int c = 1;
+        while( c < bufferedCalls ) {
+            c <<= 1;
+        }
+        capacity = c;
+        ring = new long[capacity * RECORD_WORDS];
+        published = new AtomicLongArray(capacity);
+        for(int i=0; i<capacity; i++) {
+            published.set(i, -1);
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        map(0);
+        out.putLong(0, MAGIC);
+        out.putInt(8, VERSION);
+        out.putInt(12, RECORD_BYTES);
+
+        writer = new Thread(this::drain, "duckrabbit-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /** The number of calls recorded so far. */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /** The number of calls left out because the buffer was full. */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Records a call, around the rest of it.
+     */
+    public Object intercept(Method method, Object[] args, Next next) throws Throwable {
+        Integer id = methodIds.get(method);
+        if( id == null ) {
+            id = define(method);
+        }
+        long start = System.nanoTime();
+        boolean threw = true;
+        try {
+            Object result = next.proceed(args);
+            threw = false;
+            return result;
+        } finally {
+            record(id, start, System.nanoTime() - start, threw, args);
+        }
+    }
+
+    /**
+     * Waits until every call recorded so far has been written to the file.
+     */
+    public void flush() {
+        long until = head.get();
+        while( tail < until && writer.isAlive() ) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    /**
+     * Writes everything recorded so far, and closes the file. Calls
+     * made after this aren't recorded.
+     */
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized(this) {
+            if( channel.isOpen() ) {
+                out.force();
+                // the file can't be cut short while it's mapped, on some
+                // systems, so if the writer might still be using the
+                // mapping, it is left as it is; readers stop at the end
+                // of what was written anyway
+                if( !writer.isAlive() && Platform.unmap(out) ) {
+                    channel.truncate(written);
+                }
+                out = null;
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Gives a method its id, the first time it is called, and records
+     * its signature so the reader knows what the id stands for.
+     */
+    private synchronized Integer define(Method method) {
+        Integer id = methodIds.get(method);
+        if( id != null ) {
+            return id;
+        }
+        // a different Method object for the same method, from another proxy
+        String signature = method.toString();
+        id = idsBySignature.get(signature);
+        if( id == null ) {
+            id = nextId++;
+            idsBySignature.put(signature, id);
+            byte[] bytes = signature.getBytes(StandardCharsets.UTF_8);
+            for(int offset=0; offset==0 || offset<bytes.length; offset+=NAME_BYTES) {
+                long seq = claim();
+                if( seq < 0 ) {
+                    // without its name, no call to this method can be read
+                    idsBySignature.remove(signature);
+                    return -1;
+                }
+                int base = slot(seq) * RECORD_WORDS;
+                ring[base] = METHOD | (long) id << 32;
+                ring[base + 1] = (long) offset << 32 | bytes.length;
+                for(int w=NAME_WORD; w<RECORD_WORDS; w++) {
+                    long word = 0;
+                    for(int b=0; b<8; b++) {
+                        int i = offset + (w - NAME_WORD) * 8 + b;
+                        if( i < bytes.length ) {
+                            word |= (bytes[i] & 0xffL) << (b * 8);
+                        }
+                    }
+                    ring[base + w] = word;
+                }
+                published.lazySet(slot(seq), seq);
+            }
+        }
+        Map<Method, Integer> table = new IdentityHashMap<>(methodIds);
+        table.put(method, id);
+        methodIds = table;
+        return id;
+    }
+
+    private void record(int id, long start, long nanos, boolean threw, Object[] args) {
+        if( closed || id < 0 ) {
+            return;
+        }
+        long seq = claim();
+        if( seq < 0 ) {
+            return;
+        }
+        int argc = args == null ? 0 : args.length;
+        int base = slot(seq) * RECORD_WORDS;
+        // a claimed slot must be published whatever happens, or the writer
+        // would wait for it forever
+        try {
+            ring[base] = CALL | (threw ? THREW : 0) << 8 | Math.min(argc, 255) << 16 | (long) id << 32;
+            ring[base + 1] = epochNanos + (start - nanoBase);
+            ring[base + 2] = nanos;
+            ring[base + 3] = Thread.currentThread().getId();
+            long tags = 0;
+            for(int i=0; i<MAX_ARGS; i++) {
+                long value = 0;
+                if( i < argc ) {
+                    Object a = args[i];
+                    int tag = tag(a);
+                    tags |= (long) tag << (i * 8);
+                    value = summarize(tag, a);
+                }
+                ring[base + 5 + i] = value;
+            }
+            ring[base + 4] = tags;
+        } finally {
+            published.lazySet(slot(seq), seq);
+        }
+        recorded.increment();
+    }
+
+    /**
+     * Claims the next slot in the ring, or returns -1 if it is full.
+     */
+    private long claim() {
+        for(;;) {
+            long seq = head.get();
+            if( seq - tail >= capacity ) {
+                dropped.increment();
+                return -1;
+            }
+            if( head.compareAndSet(seq, seq + 1) ) {
+                return seq;
+            }
+        }
+    }
+
+    private int slot(long seq) {
+        return (int) seq & (capacity - 1);
+    }
+
+    static int tag(Object a) {
+        if( a == null ) {
+            return NULL;
+        } else if( a instanceof String ) {
+            return STRING;
+        } else if( a instanceof Integer ) {
+            return INT;
+        } else if( a instanceof Long ) {
+            return LONG;
+        } else if( a instanceof Boolean ) {
+            return BOOLEAN;
+        } else if( a instanceof Double ) {
+            return DOUBLE;
+        } else if( a instanceof Float ) {
+            return FLOAT;
+        } else if( a instanceof Character ) {
+            return CHAR;
+        } else if( a instanceof Byte ) {
+            return BYTE;
+        } else if( a instanceof Short ) {
+            return SHORT;
+        } else if( a instanceof Enum ) {
+            return ENUM;
+        } else if( a.getClass().isArray() ) {
+            return ARRAY;
+        }
+        return OTHER;
+    }
+
+    static long summarize(int tag, Object a) {
+        switch(tag) {
+        case BOOLEAN:
+            return (Boolean) a ? 1 : 0;
+        case BYTE:
+        case SHORT:
+        case INT:
+        case LONG:
+            return ((Number) a).longValue();
+        case CHAR:
+            return (Character) a;
+        case FLOAT:
+            return Float.floatToRawIntBits((Float) a);
+        case DOUBLE:
+            return Double.doubleToRawLongBits((Double) a);
+        case STRING:
+            return ((String) a).length();
+        case ARRAY:
+            return Array.getLength(a);
+        case ENUM:
+            return ((Enum<?>) a).ordinal();
+        case OTHER:
+            return System.identityHashCode(a);
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Runs on the writer thread, copying records from the ring to the
+     * file as they are published, until the recorder is closed.
+     */
+    private void drain() {
+        try {
+            for(;;) {
+                boolean stopping = closed;
+                if( !writeAvailable() ) {
+                    if( stopping ) {
+                        return;
+                    }
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "recording stopped", e);
+            closed = true;
+        }
+    }
+
+    /**
+     * Writes whatever records are ready.
+     * @return true if there were any
+     */
+    private boolean writeAvailable() throws IOException {
+        long t = tail;
+        int count = 0;
+        while( published.get(slot(t)) == t ) {
+            if( written + RECORD_BYTES > outBase + out.capacity() ) {
+                map(written);
+            }
+            int pos = (int) (written - outBase);
+            int base = slot(t) * RECORD_WORDS;
+            for(int w=0; w<RECORD_WORDS; w++) {
+                out.putLong(pos + w * 8, ring[base + w]);
+            }
+            written += RECORD_BYTES;
+            t++;
+            count++;
+            tail = t;
+        }
+        return count > 0;
+    }
+
+    private synchronized void map(long position) throws IOException {
+        if( out != null ) {
+            out.force();
+            // only the writer thread uses it, and it's done with it
+            Platform.unmap(out);
+        }
+        out = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES);
+        out.order(ByteOrder.LITTLE_ENDIAN);
+        outBase = position;
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * InvocationRecording.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import static com.adaptershack.duckrabbit.InvocationRecorder.*;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The calls written down by an InvocationRecorder, read back from its
+ * file. The calls can be looked through, or replayed against another
+ * object, such as a DynamicDelegator's proxy, to put it under the same
+ * load the recorded one was under:
+ * <pre>
+ *   InvocationRecording recording = InvocationRecording.read(Paths.get("calls.rec"));
+ *   recording.replay(testProxy, Account.class, false);
+ * </pre>
+ * Since only summaries of the arguments were recorded, replayed calls
+ * get the same primitive values, enum constants and nulls as the
+ * original ones, but strings and arrays of the same length with nothing
+ * much in them, and null for anything else, collections included.
+ *
+ * @see InvocationRecorder
+ */
+public final class InvocationRecording implements Iterable<InvocationRecording.Call> {
+
+    /**
+     * How much of the file is mapped at a time. Recordings can be bigger
+     * than a single mapping is allowed to be.
+     */
+    private static final int WINDOW_BYTES = RECORD_BYTES << 20;
+
+    private final Map<Integer, String> methods;
+    private final List<Call> calls;
+
+    private InvocationRecording(Map<Integer, String> methods, List<Call> calls) {
+        this.methods = methods;
+        this.calls = calls;
+    }
+
+    /**
+     * Reads the recording in the given file. This can be done while the
+     * recorder is still writing to it, or after the program that was
+     * recording died; only the calls written so far are read.
+     * @throws IOException if the file isn't a recording
+     */
+    public static InvocationRecording read(Path file) throws IOException {
+        return read(file, WINDOW_BYTES);
+    }
+
+    /**
+     * Reads a recording, mapping the given number of bytes of it at a
+     * time, which must be a multiple of the record size.
+     */
+    static InvocationRecording read(Path file, int window) throws IOException {
+        Map<Integer, byte[]> names = new HashMap<>();
+        List<Call> calls = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if( size < HEADER_BYTES ) {
+                throw new IOException(file + " is not a recording");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if( header.getLong(0) != MAGIC ) {
+                throw new IOException(file + " is not a recording");
+            }
+            if( header.getInt(8) != VERSION || header.getInt(12) != RECORD_BYTES ) {
+                throw new IOException(file + " was recorded by a different version");
+            }
+
+            long position = HEADER_BYTES;
+            while( position + RECORD_BYTES <= size ) {
+                long length = Math.min(size - position, window) / RECORD_BYTES * RECORD_BYTES;
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                in.order(ByteOrder.LITTLE_ENDIAN);
+                if( !readRecords(in, names, calls) ) {
+                    break;
+                }
+                position += length;
+            }
+        }
+
+        Map<Integer, String> methods = new HashMap<>();
+        for(Map.Entry<Integer, byte[]> e : names.entrySet()) {
+            methods.put(e.getKey(), new String(e.getValue(), StandardCharsets.UTF_8));
+        }
+        InvocationRecording recording = new InvocationRecording(methods, Collections.unmodifiableList(calls));
+        for(Call c : calls) {
+            c.recording = recording;
+        }
+        return recording;
+    }
+
+    /**
+     * Reads the records in one window of the file.
+     * @return false if the end of what was written was found
+     */
+    private static boolean readRecords(MappedByteBuffer in, Map<Integer, byte[]> names, List<Call> calls) {
+        for(int pos=0; pos+RECORD_BYTES<=in.limit(); pos+=RECORD_BYTES) {
+            long first = in.getLong(pos);
+            int type = (int) first & 0xff;
+            int id = (int) (first >>> 32);
+            if( type == METHOD ) {
+                long where = in.getLong(pos + 8);
+                int offset = (int) (where >>> 32);
+                int length = (int) where;
+                byte[] name = names.get(id);
+                if( name == null || name.length != length ) {
+                    name = new byte[length];
+                    names.put(id, name);
+                }
+                for(int i=0; i<NAME_BYTES && offset+i<length; i++) {
+                    name[offset + i] = in.get(pos + NAME_WORD * 8 + i);
+                }
+            } else if( type == CALL ) {
+                long[] words = new long[RECORD_WORDS];
+                for(int w=0; w<RECORD_WORDS; w++) {
+                    words[w] = in.getLong(pos + w * 8);
+                }
+                calls.add(new Call(words));
+            } else {
+                // the rest of the last segment, never written
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The calls recorded, in the order they finished. */
+    public List<Call> getCalls() {
+        return calls;
+    }
+
+    public Iterator<Call> iterator() {
+        return calls.iterator();
+    }
+
+    /**
+     * Makes the recorded calls again, one after the other on this thread,
+     * on the given object, which is treated as being of the given type.
+     * Calls to methods that the type doesn't have are skipped, and
+     * anything the calls throw is ignored, since some of them threw when
+     * they were recorded too. If paced is set, each call is made at the
+     * same time after the first as it was originally; otherwise they are
+     * made as fast as they can be.
+     * @return the number of calls made
+     */
+    public int replay(Object target, Class<?> type, boolean paced) throws InterruptedException {
+        Map<String, Method> bySignature = new HashMap<>();
+        for(Method m : type.getMethods()) {
+            bySignature.put(m.toString(), m);
+        }
+        for(Method m : Object.class.getMethods()) {
+            bySignature.put(m.toString(), m);
+        }
+
+        int made = 0;
+        long started = System.nanoTime();
+        long firstStart = calls.isEmpty() ? 0 : calls.get(0).getStartNanos();
+        for(Call c : calls) {
+            Method m = bySignature.get(c.getMethod());
+            if( m == null ) {
+                continue;
+            }
+            if( paced ) {
+                long wait = (c.getStartNanos() - firstStart) - (System.nanoTime() - started);
+                if( wait > 0 ) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            try {
+                m.invoke(target, c.arguments(m));
+            } catch (InvocationTargetException | IllegalArgumentException e) {
+                // expected for calls that failed the first time
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            made++;
+        }
+        return made;
+    }
+
+    /**
+     * One recorded call.
+     */
+    public static final class Call {
+        private final long[] words;
+        InvocationRecording recording;
+
+        Call(long[] words) {
+            this.words = words;
+        }
+
+        /** The signature of the method, as given by Method.toString(). */
+        public String getMethod() {
+            return recording.methods.get(getMethodId());
+        }
+
+        /** A number standing for the method, unique within the recording. */
+        public int getMethodId() {
+            return (int) (words[0] >>> 32);
+        }
+
+        /** When the call was made, in nanoseconds since the epoch. */
+        public long getStartNanos() {
+            return words[1];
+        }
+
+        /** How long the call took, in nanoseconds. */
+        public long getLatencyNanos() {
+            return words[2];
+        }
+
+        /** True if the call threw an exception. */
+        public boolean threw() {
+            return ((words[0] >>> 8) & THREW) != 0;
+        }
+
+        /** The id of the thread that made the call. */
+        public long getThreadId() {
+            return words[3];
+        }
+
+        /** The number of arguments the call had. */
+        public int getArgumentCount() {
+            return (int) (words[0] >>> 16) & 0xff;
+        }
+
+        /**
+         * Returns what was recorded about an argument: its value if it was
+         * a primitive or a wrapper, the constant's ordinal for an enum, the
+         * length for a string or array, and the identity hash code of
+         * anything else. Arguments after the first MAX_ARGS, and nulls,
+         * give null.
+         */
+        public Object getArgumentSummary(int i) {
+            int tag = tag(i);
+            long value = value(i);
+            switch(tag) {
+            case BOOLEAN:
+                return value != 0;
+            case BYTE:
+                return (byte) value;
+            case SHORT:
+                return (short) value;
+            case CHAR:
+                return (char) value;
+            case INT:
+                return (int) value;
+            case FLOAT:
+                return Float.intBitsToFloat((int) value);
+            case DOUBLE:
+                return Double.longBitsToDouble(value);
+            case 0:
+            case NULL:
+                return null;
+            default:
+                return value;
+            }
+        }
+
+        /**
+         * Makes up arguments for the given method that look as much like
+         * the recorded ones as the summaries allow.
+         */
+        Object[] arguments(Method m) {
+            Class<?>[] types = m.getParameterTypes();
+            Object[] args = new Object[types.length];
+            for(int i=0; i<args.length; i++) {
+                args[i] = rebuild(types[i], tag(i), value(i), getArgumentSummary(i));
+                if( args[i] == null && types[i].isPrimitive() ) {
+                    args[i] = Array.get(Array.newInstance(types[i], 1), 0);
+                }
+            }
+            return args;
+        }
+
+        private static Object rebuild(Class<?> type, int tag, long value, Object summary) {
+            switch(tag) {
+            case STRING:
+                char[] chars = new char[(int) value];
+                Arrays.fill(chars, 'x');
+                return new String(chars);
+            case ARRAY:
+                return type.isArray() ? Array.newInstance(type.getComponentType(), (int) value) : null;
+            case ENUM:
+                Object[] constants = type.getEnumConstants();
+                return constants != null && value < constants.length ? constants[(int) value] : null;
+            case OTHER:
+                return null;
+            default:
+                return summary;
+            }
+        }
+
+        private int tag(int i) {
+            return i < MAX_ARGS && i < getArgumentCount() ? (int) (words[4] >>> (i * 8)) & 0xff : 0;
+        }
+
+        private long value(int i) {
+            return i < MAX_ARGS ? words[5 + i] : 0;
+        }
+    }
+
+}
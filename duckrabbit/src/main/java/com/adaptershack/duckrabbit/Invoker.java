@@ -0,0 +1,342 @@
+/*
+ * Invoker.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Calls one particular method on whatever target object it is handed.
+ * Invokers are created once, when a method is resolved, and then reused
+ * for every call.
+ * <p>
+ * Whenever possible the method is turned into a MethodHandle that has
+ * been adapted to take the target and an argument array, so access
+ * checks happen once up front instead of on every call. If a handle
+ * can't be had, plain reflection is used instead. Either way, an
+ * exception thrown by the target method is rethrown as-is, rather than
+ * wrapped in an InvocationTargetException.
+ * <p>
+ * A handle held in a field like this can't be inlined by the JIT, which
+ * doesn't matter for methods that are rarely called. Invokers count their
+ * calls, and once a method has been called often enough (10000 times, or
+ * as set by the duckrabbit.promoteAfter system property; 0 turns this
+ * off), a class is generated in the background that holds the handle in
+ * a static final field, where the JIT can see through it. Where it can,
+ * that class is itself an Invoker, and the DispatchPlans that resolved to
+ * the original swap it in, so the chain calls it directly rather than
+ * through the original. This is how proxies made by ProxyEngine.REFLECTION,
+ * which are cheap to make, get most of the speed of generated proxies for
+ * the methods that are called the most.
+ */
+abstract class Invoker {
+
+    /** The type every handle is adapted to: (Object target, Object[] args) */
+    private static final MethodType SPREAD_TYPE =
+        MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /** How many calls an invoker makes before it is promoted. */
+    static volatile int promoteAfter = Integer.getInteger("duckrabbit.promoteAfter", 10000);
+
+    /** Generates the classes for promoted invokers, one at a time. */
+    private static final Executor PROMOTER = newPromoter();
+
+    /**
+     * How many invokers have been promoted so far. DispatchPlans check
+     * this on each call, and when it has changed, swap in the invokers
+     * promoted since. Only the promoter thread writes it.
+     */
+    static volatile int promotions;
+
+    /**
+     * What Object itself does for equals, hashCode and toString, done
+     * for proxies that nothing in the chain answers for.
+     */
+    private static final Invoker IDENTITY_EQUALS = new Invoker() {
+        Object invoke(Object target, Object[] args) {
+            return target == args[0];
+        }
+    };
+
+    private static final Invoker IDENTITY_HASH_CODE = new Invoker() {
+        Object invoke(Object target, Object[] args) {
+            return System.identityHashCode(target);
+        }
+    };
+
+    private static final Invoker IDENTITY_TO_STRING = new Invoker() {
+        Object invoke(Object target, Object[] args) {
+            return target.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(target));
+        }
+    };
+
+    /**
+     * Calls the method on the target with the given arguments.
+     * The arguments may be null if the method takes none.
+     */
+    abstract Object invoke(Object target, Object[] args) throws Throwable;
+
+    /**
+     * Returns the fastest invoker available for the given method.
+     */
+    static Invoker forMethod(Method m) {
+        MethodHandle mh = unreflect(m);
+        if( mh == null ) {
+            return new ReflectiveInvoker(m);
+        }
+        return new HandleInvoker(m, spread(mh, m));
+    }
+
+    /**
+     * Returns an invoker for a method whose parameter and return types
+     * aren't the same as the interface method's, but that the arguments
+     * and result can be converted to and from, by widening, boxing or
+     * unboxing. Returns null if the method can't be had as a handle.
+     */
+    static Invoker converting(Method m, Method to) {
+        MethodHandle mh = unreflect(m);
+        if( mh == null ) {
+            return null;
+        }
+        try {
+            mh = receiverFirst(mh, m).asType(MethodType.methodType(to.getReturnType(), to.getParameterTypes())
+                .insertParameterTypes(0, Object.class));
+        } catch (WrongMethodTypeException e) {
+            return null;
+        }
+        return new HandleInvoker(m, spread(mh, to));
+    }
+
+    /**
+     * Returns an invoker that runs an interface's default method, as
+     * written in the interface, on whatever target it is handed, which
+     * will be the proxy. Returns null if the method can't be got at.
+     */
+    static Invoker forDefault(Method m) {
+        try {
+            return new HandleInvoker(m, spread(Platform.unreflectSpecial(m), m));
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns an invoker that does what Object itself does for equals,
+     * hashCode or toString, on whatever target it is handed, which will
+     * be the proxy. Returns null for any other method.
+     */
+    static Invoker forObjectMethod(Method m) {
+        switch(m.getName()) {
+        case "equals":
+            return IDENTITY_EQUALS;
+        case "hashCode":
+            return IDENTITY_HASH_CODE;
+        case "toString":
+            return IDENTITY_TO_STRING;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * True if the method can be called by anybody, from anywhere,
+     * without any special access being granted.
+     */
+    static boolean isPublic(Method m) {
+        if( !Modifier.isPublic(m.getModifiers())
+                || !Modifier.isPublic(m.getDeclaringClass().getModifiers()) ) {
+            return false;
+        }
+        try {
+            // on newer JDKs, this also checks that the package is exported
+            MethodHandles.publicLookup().unreflect(m);
+            return true;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a handle for the method, or null if the method can't be
+     * accessed that way.
+     */
+    static MethodHandle unreflect(Method m) {
+        if( Modifier.isPublic(m.getModifiers())
+                && Modifier.isPublic(m.getDeclaringClass().getModifiers()) ) {
+            try {
+                return MethodHandles.publicLookup().unreflect(m);
+            } catch (IllegalAccessException e) {
+                // fall through and try the hard way
+            }
+        }
+        try {
+            // things like anonymous classes aren't public, even though
+            // their methods are
+            return Platform.unreflectPrivate(m);
+        } catch (IllegalAccessException | RuntimeException e) {
+            // on newer JDKs this can be refused for classes in
+            // modules that aren't open to us
+            return null;
+        }
+    }
+
+    /**
+     * Adapts a handle for the method to take (Object target, Object[] args)
+     * and return Object.
+     */
+    static MethodHandle spread(MethodHandle mh, Method m) {
+        mh = receiverFirst(mh, m);
+        mh = mh.asType(mh.type().generic());
+        mh = mh.asSpreader(Object[].class, m.getParameterCount());
+        return mh.asType(SPREAD_TYPE);
+    }
+
+    /**
+     * Makes sure a handle for the method takes the target as its
+     * first argument, even if the method is static and has no use for it.
+     */
+    static MethodHandle receiverFirst(MethodHandle mh, Method m) {
+        if( Modifier.isStatic(m.getModifiers()) ) {
+            return MethodHandles.dropArguments(mh, 0, Object.class);
+        }
+        return mh;
+    }
+
+    /**
+     * True once calls to this invoker go through a generated class.
+     */
+    boolean isPromoted() {
+        return false;
+    }
+
+    /**
+     * Returns the invoker to call instead of this one, now that it has
+     * been promoted, or null if it hasn't been.
+     */
+    Invoker promoted() {
+        return null;
+    }
+
+    private static Executor newPromoter() {
+        ThreadPoolExecutor promoter = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "duckrabbit-promoter");
+                t.setDaemon(true);
+                return t;
+            });
+        promoter.allowCoreThreadTimeOut(true);
+        return promoter;
+    }
+
+    /**
+     * An invoker using a pre-adapted MethodHandle, until it is promoted.
+     */
+    private static final class HandleInvoker extends Invoker {
+        private final Method method;
+        private final MethodHandle handle;
+
+        /** The generated class's instance, once there is one. */
+        private volatile Invoker promoted;
+
+        /**
+         * Calls so far. This is deliberately not atomic, since it's only
+         * a rough guide to how hot the method is, and contention over it
+         * would cost more than the occasional lost count.
+         */
+        private int calls;
+        private boolean queued;
+
+        HandleInvoker(Method method, MethodHandle handle) {
+            this.method = method;
+            this.handle = handle;
+        }
+
+        Object invoke(Object target, Object[] args) throws Throwable {
+            // only until the plan that handed out this invoker swaps it out
+            Invoker p = promoted;
+            if( p != null ) {
+                return p.invoke(target, args);
+            }
+            if( !queued && ++calls >= promoteAfter && promoteAfter > 0 ) {
+                queued = true;
+                PROMOTER.execute(this::promote);
+            }
+            return (Object) handle.invokeExact(target, args);
+        }
+
+        private void promote() {
+            Invoker p = GeneratedProxyEngine.promote(handle);
+            if( p != null ) {
+                promoted = p;
+                promotions++;
+            }
+        }
+
+        boolean isPromoted() {
+            return promoted != null;
+        }
+
+        Invoker promoted() {
+            return promoted;
+        }
+
+        public String toString() {
+            return method.toString();
+        }
+    }
+
+    /**
+     * A promoted invoker for where the generated class can't be an Invoker
+     * itself, since it has to be in a class loader of its own.
+     */
+    static final class FunctionInvoker extends Invoker {
+        private final BiFunction<Object, Object[], Object> function;
+
+        FunctionInvoker(BiFunction<Object, Object[], Object> function) {
+            this.function = function;
+        }
+
+        Object invoke(Object target, Object[] args) {
+            return function.apply(target, args);
+        }
+    }
+
+    /**
+     * An invoker using plain old reflection, for the occasional method that
+     * can't be had as a MethodHandle.
+     */
+    private static final class ReflectiveInvoker extends Invoker {
+        private final Method method;
+
+        ReflectiveInvoker(Method method) {
+            this.method = method;
+        }
+
+        Object invoke(Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        public String toString() {
+            return method.toString();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * LazyDelegate.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.util.function.Supplier;
+
+/**
+ * Stands in for an object in a chain until the object is first needed,
+ * at which point it is made by calling a Supplier. The supplier is only
+ * ever called once successfully, however many threads need the object
+ * at the same time; if it throws, the next call tries again.
+ *
+ * @see InvocationChain#addLazy(Class, Supplier)
+ */
+final class LazyDelegate<T> {
+
+    /** The class the object will be, as far as matching methods goes. */
+    final Class<? extends T> type;
+
+    private Supplier<? extends T> supplier;
+    private volatile T value;
+
+    LazyDelegate(Class<? extends T> type, Supplier<? extends T> supplier) {
+        if( type == null || supplier == null ) {
+            throw new NullPointerException();
+        }
+        this.type = type;
+        this.supplier = supplier;
+    }
+
+    /**
+     * Returns the object, making it if this is the first time.
+     */
+    T get() {
+        T v = value;
+        if( v == null ) {
+            synchronized(this) {
+                v = value;
+                if( v == null ) {
+                    v = supplier.get();
+                    if( !type.isInstance(v) ) {
+                        throw new IllegalStateException("supplier returned " + v + " instead of a " + type.getName());
+                    }
+                    value = v;
+                    supplier = null;
+                }
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Makes the given object the one that will be returned, without ever
+     * calling the supplier, unless the object has been made already.
+     * @return false if it had been made already
+     * @throws IllegalArgumentException if the object isn't of this type
+     */
+    synchronized boolean supplyInstead(T replacement) {
+        if( !type.isInstance(replacement) ) {
+            throw new IllegalArgumentException("replacement must be a " + type.getName());
+        }
+        if( value != null ) {
+            return false;
+        }
+        value = replacement;
+        supplier = null;
+        return true;
+    }
+
+    /**
+     * Returns the object if it has been made, or null if it hasn't.
+     */
+    T peek() {
+        return value;
+    }
+
+}
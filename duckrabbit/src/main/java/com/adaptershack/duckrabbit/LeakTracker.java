@@ -0,0 +1,252 @@
+/*
+ * LeakTracker.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Notices when a proxy is garbage collected without the thing it wraps
+ * having been closed. This does the job that overriding finalize() used
+ * to, without any finalizers: each proxy is watched by a PhantomReference,
+ * and a single daemon thread shared by all trackers asks each resource
+ * whether it was closed once its proxy is gone.
+ * <p>
+ * Getting a stack trace is the expensive part of tracking an object, so
+ * by default only one proxy in 16 records where it was made. Leaks from
+ * the others are still counted and reported, just without the stack trace.
+ * <p>
+ * Typical use, for connections:
+ * <pre>
+ *   static final LeakTracker&lt;Connection&gt; LEAKS =
+ *       new LeakTracker&lt;&gt;(Connection::isClosed);
+ *
+ *   Connection wrapped = new DynamicDelegator&lt;Connection&gt;(realConnection) {{
+ *       leakTracker = LEAKS;
+ *   }}.getProxy();
+ * </pre>
+ * The tracker holds on to each resource until its proxy is collected, so
+ * the resource must not itself refer back to the proxy, or the proxy will
+ * never be collected and the leak will go unnoticed.
+ *
+ * @param <T> the type of the things being wrapped
+ */
+public class LeakTracker<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(LeakTracker.class.getName());
+
+    /**
+     * Says whether a resource was closed. Unlike Predicate, this is
+     * allowed to throw, since methods like Connection.isClosed do.
+     * An exception is taken to mean that it wasn't.
+     */
+    public interface ClosedCheck<T> {
+        boolean isClosed(T resource) throws Exception;
+    }
+
+    /**
+     * Told about each leak, on the reaper thread. The site is where the
+     * proxy was made, or null if that wasn't recorded.
+     */
+    public interface LeakListener<T> {
+        void leaked(T resource, Throwable site);
+    }
+
+    /** References to proxies that have been collected arrive here. */
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    private static volatile Thread reaper;
+
+    private final ClosedCheck<? super T> closedCheck;
+    private final LeakListener<? super T> listener;
+    private final int sampleEvery;
+
+    /**
+     * The references to proxies that haven't been collected yet. These
+     * have to be held somewhere, or they would be collected themselves.
+     */
+    private final Set<Tracked<T>> live = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong registrations = new AtomicLong();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder leaked = new LongAdder();
+
+    /**
+     * Creates a tracker that logs leaks as warnings, recording where
+     * the proxy was made for every one in 16 of them.
+     */
+    public LeakTracker(ClosedCheck<? super T> closedCheck) {
+        this(closedCheck, LeakTracker::log, 16);
+    }
+
+    /**
+     * Creates a tracker that tells the given listener about leaks.
+     * Where the proxy was made is recorded for one in every sampleEvery
+     * proxies; 1 records it for all of them, and 0 for none.
+     */
+    public LeakTracker(ClosedCheck<? super T> closedCheck, LeakListener<? super T> listener, int sampleEvery) {
+        if( sampleEvery < 0 ) {
+            throw new IllegalArgumentException("sampleEvery can't be negative");
+        }
+        this.closedCheck = closedCheck;
+        this.listener = listener;
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Starts watching the given proxy. When it is garbage collected,
+     * the resource will be checked to see whether it was closed.
+     */
+    public void track(Object proxy, T resource) {
+        watch(proxy, resource, null);
+    }
+
+    /**
+     * Starts watching a proxy whose resource won't be made until it is
+     * first needed. If it never was, there's nothing to have leaked, and
+     * the proxy counts as released when it is collected.
+     */
+    Tracked<T> track(Object proxy, LazyDelegate<? extends T> lazy) {
+        return watch(proxy, null, lazy);
+    }
+
+    /**
+     * Starts watching a proxy, returning the reference that remembers its
+     * resource, so that the resource can be replaced.
+     */
+    Tracked<T> watch(Object proxy, T resource, LazyDelegate<? extends T> lazy) {
+        Throwable site = null;
+        if( sampleEvery > 0 && registrations.getAndIncrement() % sampleEvery == 0 ) {
+            site = new Throwable("proxy created here");
+        }
+        Tracked<T> tracked = new Tracked<>(proxy, resource, lazy, site, this);
+        live.add(tracked);
+        startReaper();
+        return tracked;
+    }
+
+    /** The number of tracked proxies that haven't been collected yet. */
+    public long getLive() {
+        return live.size();
+    }
+
+    /** The number of collected proxies whose resource had been closed. */
+    public long getReleased() {
+        return released.sum();
+    }
+
+    /** The number of collected proxies whose resource had not been closed. */
+    public long getLeaked() {
+        return leaked.sum();
+    }
+
+    /**
+     * Checks a resource whose proxy has been collected.
+     */
+    void reap(Tracked<T> tracked) {
+        if( !live.remove(tracked) ) {
+            return;
+        }
+        T resource = tracked.take();
+        boolean closed;
+        try {
+            closed = resource == null || closedCheck.isClosed(resource);
+        } catch (Exception e) {
+            closed = false;
+        }
+        if( closed ) {
+            released.increment();
+        } else {
+            leaked.increment();
+            try {
+                listener.leaked(resource, tracked.site);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "leak listener failed", e);
+            }
+        }
+    }
+
+    private static void log(Object resource, Throwable site) {
+        LOGGER.log(Level.WARNING, "proxy was collected without closing " + resource, site);
+    }
+
+    private static void startReaper() {
+        if( reaper == null ) {
+            synchronized(LeakTracker.class) {
+                if( reaper == null ) {
+                    Thread t = new Thread(LeakTracker::drain, "duckrabbit-leak-reaper");
+                    t.setDaemon(true);
+                    t.start();
+                    reaper = t;
+                }
+            }
+        }
+    }
+
+    private static void drain() {
+        for(;;) {
+            try {
+                Reference<?> ref = QUEUE.remove();
+                ((Tracked<?>) ref).reap();
+            } catch (InterruptedException e) {
+                // nobody should interrupt us, but carry on if they do
+            } catch (Throwable t) {
+                LOGGER.log(Level.WARNING, "leak reaper failed", t);
+            }
+        }
+    }
+
+    /**
+     * Watches a single proxy, and remembers what it wrapped, or the
+     * LazyDelegate that will make it.
+     */
+    static final class Tracked<T> extends PhantomReference<Object> {
+        private T resource;
+        private LazyDelegate<? extends T> lazy;
+        final Throwable site;
+        final LeakTracker<T> tracker;
+
+        Tracked(Object proxy, T resource, LazyDelegate<? extends T> lazy, Throwable site, LeakTracker<T> tracker) {
+            super(proxy, QUEUE);
+            this.resource = resource;
+            this.lazy = lazy;
+            this.site = site;
+            this.tracker = tracker;
+        }
+
+        void reap() {
+            tracker.reap(this);
+        }
+
+        /**
+         * Makes the given object the one checked when the proxy is
+         * collected, in place of the one it had, however that was given.
+         */
+        synchronized void replace(T replacement) {
+            resource = replacement;
+            lazy = null;
+        }
+
+        /**
+         * Returns the resource, if it was ever made, and forgets it.
+         */
+        synchronized T take() {
+            T r = lazy != null ? lazy.peek() : resource;
+            resource = null;
+            lazy = null;
+            return r;
+        }
+    }
+
+}
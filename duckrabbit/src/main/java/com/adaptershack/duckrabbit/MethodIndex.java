@@ -0,0 +1,312 @@
+/*
+ * MethodIndex.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The public methods of a class, indexed by name and parameter types,
+ * along with the invokers that have been made for them. There is only
+ * ever one index per class, shared by every chain that has an instance
+ * of that class in it, so the reflection needed to build it happens
+ * once rather than every time a proxy is made.
+ * <p>
+ * An index holds objects of this library's own classes, such as its
+ * invokers, so where it's kept depends on who can see this library. The
+ * index of a class whose loader can see it is kept in a ClassValue, so it
+ * lives exactly as long as its class does and never holds a class loader
+ * in memory on its own. A class whose loader can't, such as one of the
+ * JDK's, could otherwise keep this library's loader in memory for as long
+ * as it's around, which for the JDK's own is forever. Those are kept in a
+ * weak map of this library's instead, which lives only as long as this
+ * library does.
+ */
+final class MethodIndex {
+
+    private static final ClassValue<MethodIndex> indexes = new ClassValue<MethodIndex>() {
+        protected MethodIndex computeValue(Class<?> type) {
+            return new MethodIndex(type);
+        }
+    };
+
+    /** Whether a class's loader can see this library. */
+    private static final ClassValue<Boolean> seesLibrary = new ClassValue<Boolean>() {
+        protected Boolean computeValue(Class<?> type) {
+            return sees(type.getClassLoader(), MethodIndex.class);
+        }
+    };
+
+    /** The indexes of classes whose loaders can't see this library. */
+    private static final Map<Class<?>, MethodIndex> foreign = new WeakHashMap<>();
+
+    /** The primitive types each primitive type widens to. */
+    private static final Map<Class<?>, List<Class<?>>> WIDER = new HashMap<>();
+    /** Each primitive type's wrapper, and each wrapper's primitive type. */
+    private static final Map<Class<?>, Class<?>> BOXES = new HashMap<>();
+    private static final Map<Class<?>, Class<?>> UNBOXES = new HashMap<>();
+    static {
+        WIDER.put(byte.class, Arrays.asList(short.class, int.class, long.class, float.class, double.class));
+        WIDER.put(short.class, Arrays.asList(int.class, long.class, float.class, double.class));
+        WIDER.put(char.class, Arrays.asList(int.class, long.class, float.class, double.class));
+        WIDER.put(int.class, Arrays.asList(long.class, float.class, double.class));
+        WIDER.put(long.class, Arrays.asList(float.class, double.class));
+        WIDER.put(float.class, Arrays.asList(double.class));
+        Class<?>[][] pairs = {
+            { boolean.class, Boolean.class }, { byte.class, Byte.class },
+            { short.class, Short.class }, { char.class, Character.class },
+            { int.class, Integer.class }, { long.class, Long.class },
+            { float.class, Float.class }, { double.class, Double.class }
+        };
+        for(Class<?>[] pair : pairs) {
+            BOXES.put(pair[0], pair[1]);
+            UNBOXES.put(pair[1], pair[0]);
+        }
+    }
+
+    private final Map<MethodSig, Method> methodMap = new HashMap<>();
+    private final Map<Method, Invoker> invokers = new ConcurrentHashMap<>();
+    private final Map<Method, Optional<Invoker>> defaultInvokers = new ConcurrentHashMap<>();
+
+    /**
+     * The answers from matchCompatible, keyed by the class asked and the
+     * interface method asked about. An answer holds on to both, so it's
+     * kept in the index of whichever of the two can see the other; that
+     * way it never keeps a class loader in memory that wouldn't be
+     * anyway.
+     */
+    private final Map<List<Object>, Optional<Compatible>> compatible = new ConcurrentHashMap<>();
+
+    private final Class<?> type;
+
+    private MethodIndex(Class<?> c) {
+        this.type = c;
+        Method[] methods = c.getMethods();
+        for(int i=0; i<methods.length;i++) {
+            Method method = methods[i];
+            
+            // do not count methods that we can't access
+            if( Modifier.isPublic(method.getModifiers())) {
+                methodMap.put( new MethodSig(method), method);
+            }
+        }            
+    }
+
+    /**
+     * Returns the index for the given class.
+     */
+    static MethodIndex of(Class<?> c) {
+        if( seesLibrary.get(c) ) {
+            return indexes.get(c);
+        }
+        synchronized(foreign) {
+            return foreign.computeIfAbsent(c, MethodIndex::new);
+        }
+    }
+
+    /**
+     * Returns the invoker for a method, making it if this is the
+     * first time anyone has asked.
+     */
+    static Invoker invoker(Method m) {
+        return of(m.getDeclaringClass()).invokers.computeIfAbsent(m, Invoker::forMethod);
+    }
+
+    /**
+     * Returns the invoker that runs an interface's default method on
+     * the proxy, making it if this is the first time anyone has asked,
+     * or null if the method can't be got at.
+     */
+    static Invoker defaultInvoker(Method m) {
+        return of(m.getDeclaringClass()).defaultInvokers
+            .computeIfAbsent(m, k -> Optional.ofNullable(Invoker.forDefault(k))).orElse(null);
+    }
+
+    /**
+     * Returns this class's method with the same name and parameter
+     * types as the given method, if there is one.
+     */
+    Method match(Method m) {
+        return methodMap.get( new MethodSig(m));
+    }
+
+    /**
+     * Returns this class's method that a call to the given method could
+     * go to in Java, along with an invoker that converts the arguments
+     * and result on the way, or null if there isn't exactly one best such
+     * method. The answer is worked out the first time it's asked for,
+     * unless neither this class nor the interface can see the other, in
+     * which case it's worked out every time.
+     * @see InvocationChain#setLooseMatching(boolean)
+     */
+    Compatible matchCompatible(Method m) {
+        MethodIndex owner = ownerFor(m.getDeclaringClass());
+        if( owner == null ) {
+            return findCompatible(m);
+        }
+        return owner.compatible.computeIfAbsent(Arrays.asList(type, m),
+            k -> Optional.ofNullable(findCompatible(m))).orElse(null);
+    }
+
+    /**
+     * Returns the index to keep answers about the given interface's
+     * methods in: this one if this class's loader can see the interface,
+     * the interface's if its loader can see this class, or null if
+     * neither can.
+     */
+    private MethodIndex ownerFor(Class<?> iface) {
+        if( sees(type.getClassLoader(), iface) ) {
+            return this;
+        }
+        if( sees(iface.getClassLoader(), type) ) {
+            return of(iface);
+        }
+        return null;
+    }
+
+    private static boolean sees(ClassLoader loader, Class<?> c) {
+        if( c.getClassLoader() == loader || c.getClassLoader() == null ) {
+            return true;
+        }
+        try {
+            return Class.forName(c.getName(), false, loader) == c;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private Compatible findCompatible(Method m) {
+        // as in Java, only look at boxing if nothing fits without it; if
+        // something does, but it's ambiguous, boxing doesn't settle it
+        List<Method> applicable = applicable(m, false);
+        if( applicable.isEmpty() ) {
+            applicable = applicable(m, true);
+        }
+        Method best = mostSpecific(applicable);
+        if( best == null ) {
+            return null;
+        }
+        Invoker invoker = Invoker.converting(best, m);
+        return invoker == null ? null : new Compatible(best, invoker);
+    }
+
+    /**
+     * Returns the methods that the arguments and result of the given
+     * method can be converted to and from.
+     */
+    private List<Method> applicable(Method m, boolean boxing) {
+        List<Method> applicable = new ArrayList<>();
+        for(Method candidate : methodMap.values()) {
+            if( candidate.getName().equals(m.getName())
+                    && candidate.getParameterCount() == m.getParameterCount()
+                    && !Modifier.isStatic(candidate.getModifiers())
+                    && accepts(candidate.getParameterTypes(), m.getParameterTypes(), boxing)
+                    && returns(candidate.getReturnType(), m.getReturnType()) ) {
+                applicable.add(candidate);
+            }
+        }
+        return applicable;
+    }
+
+    /**
+     * Returns the one method that is more specific than all the rest,
+     * or null if there are none, or no one of them is.
+     */
+    private static Method mostSpecific(List<Method> applicable) {
+        for(Method candidate : applicable) {
+            boolean best = true;
+            for(Method other : applicable) {
+                if( other != candidate
+                        && !accepts(other.getParameterTypes(), candidate.getParameterTypes(), false) ) {
+                    best = false;
+                    break;
+                }
+            }
+            if( best ) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean accepts(Class<?>[] parameters, Class<?>[] arguments, boolean boxing) {
+        for(int i=0; i<parameters.length; i++) {
+            if( !convertible(arguments[i], parameters[i], boxing) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean returns(Class<?> actual, Class<?> wanted) {
+        if( wanted == void.class ) {
+            return true;
+        }
+        return actual != void.class && convertible(actual, wanted, true);
+    }
+
+    /**
+     * True if a value of one type can be passed where the other is
+     * expected, by widening, or if allowed, by boxing or unboxing first.
+     */
+    static boolean convertible(Class<?> from, Class<?> to, boolean boxing) {
+        if( from == to ) {
+            return true;
+        }
+        if( from.isPrimitive() && to.isPrimitive() ) {
+            return widens(from, to);
+        }
+        if( !boxing ) {
+            return !from.isPrimitive() && !to.isPrimitive() && to.isAssignableFrom(from);
+        }
+        if( from.isPrimitive() ) {
+            return to.isAssignableFrom(BOXES.get(from));
+        }
+        if( to.isPrimitive() ) {
+            Class<?> unboxed = UNBOXES.get(from);
+            return unboxed != null && (unboxed == to || widens(unboxed, to));
+        }
+        return to.isAssignableFrom(from);
+    }
+
+    /** True for the widening primitive conversions, such as int to long. */
+    private static boolean widens(Class<?> from, Class<?> to) {
+        List<Class<?>> wider = WIDER.get(from);
+        return wider != null && wider.contains(to);
+    }
+
+    /**
+     * A method that an interface method can be converted to,
+     * and the invoker that does it.
+     */
+    static final class Compatible {
+        final Method method;
+        final Invoker invoker;
+
+        Compatible(Method method, Invoker invoker) {
+            this.method = method;
+            this.invoker = invoker;
+        }
+    }
+
+    @SuppressWarnings("serial")
+	private static class MethodSig extends ArrayList<Object> {
+      public MethodSig(Method m) {
+	      add( m.getName() );
+	      add( Arrays.asList( m.getParameterTypes()) );
+      }
+    }
+
+}
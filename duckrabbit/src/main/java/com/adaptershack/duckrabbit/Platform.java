@@ -0,0 +1,145 @@
+/*
+ * Platform.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The few things that are done differently depending on which version of
+ * Java is running. This is the Java 8 version; the jar is a multi-release
+ * jar, with versions of this class for Java 9 and Java 15 that use what
+ * those have to offer. Nothing outside this class should need to care
+ * which one it got.
+ */
+final class Platform {
+
+    /**
+     * MethodHandles.privateLookupIn, if this is really running on a
+     * later Java from the plain jar, as it does from an IDE or in tests.
+     */
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    private Platform() {
+    }
+
+    /**
+     * The engine used when none is asked for. On Java 8 this is the
+     * original reflection engine.
+     * @see ProxyEngine#getDefault()
+     */
+    static ProxyEngine defaultEngine() {
+        return ProxyEngine.REFLECTION;
+    }
+
+    /**
+     * Returns a handle for a method that isn't public, or whose class
+     * isn't. On Java 8 the only way to do that is to make the method
+     * accessible first.
+     * @throws IllegalAccessException if it can't be done
+     */
+    static MethodHandle unreflectPrivate(Method m) throws IllegalAccessException {
+        try {
+            m.setAccessible(true);
+        } catch (RuntimeException e) {
+            throw new IllegalAccessException(e.getMessage());
+        }
+        return MethodHandles.publicLookup().unreflect(m);
+    }
+
+    /**
+     * Returns a handle that runs an interface's default method as written
+     * in the interface, whatever the object it's called on does. Java 8
+     * only hands those out to a Lookup in the interface itself, which
+     * has to be made by calling Lookup's private constructor.
+     * @throws IllegalAccessException if it can't be done
+     */
+    static MethodHandle unreflectSpecial(Method m) throws IllegalAccessException {
+        Class<?> declarer = m.getDeclaringClass();
+        MethodHandles.Lookup lookup;
+        try {
+            if( PRIVATE_LOOKUP_IN != null ) {
+                lookup = (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, declarer, MethodHandles.lookup());
+            } else {
+                Constructor<MethodHandles.Lookup> c =
+                    MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                c.setAccessible(true);
+                lookup = c.newInstance(declarer, MethodHandles.Lookup.PRIVATE);
+            }
+        } catch (InvocationTargetException e) {
+            throw new IllegalAccessException(String.valueOf(e.getCause()));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalAccessException(String.valueOf(e));
+        }
+        return lookup.unreflectSpecial(m, declarer);
+    }
+
+    /**
+     * The package, as an internal name ending in a slash, to put a
+     * generated class for the given interfaces and delegate classes in.
+     */
+    static String packageFor(Class<?>[] interfaces, Class<?>[] classes) {
+        return GeneratedProxyEngine.PACKAGE;
+    }
+
+    /**
+     * Defines and initializes a generated class, which needs to be able
+     * to see the given interfaces and delegate classes. On Java 8 each
+     * class gets a class loader of its own.
+     */
+    static Class<?> define(String className, byte[] bytes, Class<?>[] interfaces, Class<?>[] classes)
+            throws ClassNotFoundException {
+        return GeneratedProxyEngine.defineInOwnLoader(className, bytes, interfaces, classes);
+    }
+
+    /**
+     * Unmaps a buffer right away, rather than whenever it is garbage
+     * collected. Java 8 has no proper way to do this, only the buffer's
+     * own cleaner; if this is really running on a later Java, that is
+     * out of reach, but Unsafe.invokeCleaner will do. Nothing may touch
+     * the buffer after this.
+     * @return false if it couldn't be done
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafe.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafe.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Java 8
+            }
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object c = cleaner.invoke(buffer);
+            if( c != null ) {
+                c.getClass().getMethod("clean").invoke(c);
+            }
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+}
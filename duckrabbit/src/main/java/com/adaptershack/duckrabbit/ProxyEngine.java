@@ -0,0 +1,73 @@
+/*
+ * ProxyEngine.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.util.function.Function;
+
+/**
+ * Makes the actual proxy objects for an InvocationChain. The proxy
+ * must implement all of the chain's interfaces, and every method
+ * called on it must behave as if InvocationChain.invoke had been
+ * called, though how it gets there is up to the engine.
+ * <p>
+ * Engines can also be supplied by other jars, as services, by listing
+ * the implementing class in META-INF/services/com.adaptershack.duckrabbit.ProxyEngine.
+ * The first one found becomes the default, used whenever a proxy is made
+ * without naming an engine. See getDefault for how else the default is
+ * chosen.
+ *
+ * @see InvocationChain#newProxyInstance(ProxyEngine)
+ * @see DynamicDelegator#getProxy(ProxyEngine)
+ */
+public interface ProxyEngine {
+
+    /**
+     * The original engine, using java.lang.reflect.Proxy with the
+     * chain as its InvocationHandler.
+     */
+    ProxyEngine REFLECTION = new ReflectionProxyEngine();
+
+    /**
+     * An engine that generates a class for each combination of interfaces
+     * and delegate classes, calling the delegates directly with no
+     * argument arrays or boxing.
+     * @see GeneratedProxyEngine
+     */
+    ProxyEngine GENERATED = new GeneratedProxyEngine();
+
+    /**
+     * Returns the engine used when none is given, which is chosen once,
+     * the first time it's needed. The system property duckrabbit.proxyEngine
+     * picks it if it is set, to "reflection", "generated", or the class name
+     * of any other engine. Otherwise it is the first engine found as a
+     * service, if there is one. Otherwise it depends on the version of
+     * Java: REFLECTION on Java 8, and GENERATED on anything later, where
+     * it can get at more without setAccessible, and on Java 15 and up
+     * makes hidden classes.
+     */
+    static ProxyEngine getDefault() {
+        return ProxyEngines.DEFAULT;
+    }
+
+    /**
+     * Creates a proxy for the chain.
+     */
+    Object newProxyInstance(InvocationChain chain);
+
+    /**
+     * Returns a function that makes proxies for chains shaped like the
+     * given one, that is, with the same interfaces, and with objects of
+     * the same classes in the same order. Engines with expensive setup
+     * should do it here, once, so that each proxy is cheap to make.
+     * By default, this just calls newProxyInstance each time.
+     * @see ProxyTemplate
+     */
+    default Function<InvocationChain, Object> newProxyFactory(InvocationChain prototype) {
+        return this::newProxyInstance;
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * ProxyEngines.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Chooses the default ProxyEngine. This is a class of its own so
+ * that the choice is made the first time it's needed, and not when
+ * ProxyEngine itself is loaded.
+ * @see ProxyEngine#getDefault()
+ */
+final class ProxyEngines {
+
+    private static final Logger LOGGER = Logger.getLogger(ProxyEngines.class.getName());
+
+    static final String PROPERTY = "duckrabbit.proxyEngine";
+
+    static final ProxyEngine DEFAULT = choose(System.getProperty(PROPERTY),
+        ServiceLoader.load(ProxyEngine.class, ProxyEngine.class.getClassLoader()));
+
+    private ProxyEngines() {
+    }
+
+    /**
+     * Picks the engine asked for by name, if any, or else the first
+     * of the services, or else the one for this version of Java.
+     */
+    static ProxyEngine choose(String forced, Iterable<ProxyEngine> services) {
+        if( forced != null && !forced.trim().isEmpty() ) {
+            ProxyEngine engine = named(forced.trim(), services);
+            if( engine != null ) {
+                return engine;
+            }
+            LOGGER.warning("no proxy engine called " + forced + ", using the default");
+        }
+        try {
+            for(ProxyEngine engine : services) {
+                return engine;
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.log(Level.WARNING, "couldn't load a proxy engine", e);
+        }
+        return Platform.defaultEngine();
+    }
+
+    private static ProxyEngine named(String name, Iterable<ProxyEngine> services) {
+        if( name.equalsIgnoreCase("reflection") ) {
+            return ProxyEngine.REFLECTION;
+        }
+        if( name.equalsIgnoreCase("generated") ) {
+            return ProxyEngine.GENERATED;
+        }
+        try {
+            for(ProxyEngine engine : services) {
+                if( engine.getClass().getName().equals(name) ) {
+                    return engine;
+                }
+            }
+        } catch (ServiceConfigurationError e) {
+            LOGGER.log(Level.WARNING, "couldn't load a proxy engine", e);
+        }
+        try {
+            Class<?> c = Class.forName(name, true, ProxyEngine.class.getClassLoader());
+            return (ProxyEngine) c.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            LOGGER.log(Level.WARNING, "couldn't make proxy engine " + name, e);
+            return null;
+        }
+    }
+
+}
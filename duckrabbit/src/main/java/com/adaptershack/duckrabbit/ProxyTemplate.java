@@ -0,0 +1,125 @@
+/*
+ * ProxyTemplate.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Makes lots of proxies of the same shape as cheaply as possible. The
+ * classes of the delegates and the interfaces to be implemented are given
+ * once, up front, and everything that can be worked out from them is: the
+ * full set of interfaces, which delegate each method goes to, the
+ * invokers for those methods, and the proxy class itself. After that,
+ * making a proxy is just a matter of making the InvocationChain and the
+ * proxy objects.
+ * <p>
+ * For example, to wrap every connection handed out by a pool with a
+ * CloseLogger, a plain class with a close method of its own that logs and
+ * then closes the connection it was given:
+ * <pre>
+ *   ProxyTemplate&lt;Connection&gt; template =
+ *       new ProxyTemplate&lt;&gt;(Connection.class, CloseLogger.class, realConnectionClass);
+ *
+ *   Connection c = template.newInstance(new CloseLogger(real), real);
+ * </pre>
+ * Methods are matched against the classes given to the constructor, so
+ * the delegates must be instances of those classes. Any public methods
+ * that a subclass adds will not be seen.
+ * <p>
+ * The chains behind these proxies can't have anything added to them.
+ *
+ * @see DynamicDelegator#getProxy(Class, Object...)
+ */
+public final class ProxyTemplate<T> {
+
+    private final Class<T> mainInterface;
+    private final Class<?>[] classes;
+    private final Set<Class<?>> interfaces;
+    private final Class<?>[] proxyInterfaces;
+    private final DispatchPlan plan;
+    private final Function<InvocationChain, Object> factory;
+
+    /**
+     * Creates a template for proxies implementing the interface, and
+     * any interfaces implemented by the delegate classes, which are
+     * chained together in the order given.
+     */
+    public ProxyTemplate(Class<T> mainInterface, Class<?>... delegateClasses) {
+        this(ProxyEngine.getDefault(), mainInterface, null, delegateClasses);
+    }
+
+    /**
+     * Creates a template for proxies implementing the main interface, the
+     * extra interfaces, and any interfaces implemented by the delegate
+     * classes, which are chained together in the order given. The proxies
+     * are made by the given engine.
+     */
+    public ProxyTemplate(ProxyEngine engine, Class<T> mainInterface, Class<?>[] extras, Class<?>... delegateClasses) {
+        this.mainInterface = mainInterface;
+        this.classes = delegateClasses.clone();
+
+        Set<Class<?>> all = new LinkedHashSet<>();
+        for(Class<?> c : classes) {
+            ReflectionUtils.getAllInterfaces(c, all);
+        }
+        all.add(mainInterface);
+        if( extras != null ) {
+            all.addAll(Arrays.asList(extras));
+        }
+        this.interfaces = Collections.unmodifiableSet(all);
+        this.proxyInterfaces = ReflectionUtils.getMinimalInterfaces(all);
+
+        this.plan = new DispatchPlan(classes);
+        plan.prepare(all.toArray(new Class<?>[all.size()]));
+
+        this.factory = engine.newProxyFactory(
+            new InvocationChain(plan, interfaces, proxyInterfaces, new Object[classes.length]));
+    }
+
+    /**
+     * Makes a proxy chaining together the given delegates, which must be
+     * instances of this template's classes, in the same order. The array
+     * is used as-is, so it must not be changed afterwards.
+     * <p>
+     * Any delegates that are DynamicDelegators will have their
+     * thisProxy set to the new proxy.
+     */
+    @SuppressWarnings("unchecked")
+    public T newInstance(Object... delegates) {
+        if( delegates.length != classes.length ) {
+            throw new IllegalArgumentException("expected " + classes.length + " delegates, got " + delegates.length);
+        }
+        for(int i=0; i<delegates.length; i++) {
+            if( !classes[i].isInstance(delegates[i]) ) {
+                throw new IllegalArgumentException("delegate " + i + " is not a " + classes[i].getName());
+            }
+        }
+
+        InvocationChain chain = new InvocationChain(plan, interfaces, proxyInterfaces, delegates);
+        T proxy = mainInterface.cast(factory.apply(chain));
+
+        for(Object d : delegates) {
+            if( d instanceof DynamicDelegator ) {
+                ((DynamicDelegator<T>) d).thisProxy = proxy;
+                ((DynamicDelegator<T>) d).chain = chain;
+            }
+        }
+        return proxy;
+    }
+
+    /**
+     * Returns all the interfaces implemented by the proxies.
+     */
+    public Class<?>[] getInterfaces() {
+        return interfaces.toArray(new Class<?>[interfaces.size()]);
+    }
+
+}
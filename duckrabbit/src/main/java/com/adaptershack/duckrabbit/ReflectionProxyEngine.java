@@ -0,0 +1,58 @@
+/*
+ * ReflectionProxyEngine.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.function.Function;
+
+/**
+ * Makes proxies with java.lang.reflect.Proxy, using the chain
+ * itself as the InvocationHandler.
+ * @see ProxyEngine#REFLECTION
+ */
+class ReflectionProxyEngine implements ProxyEngine {
+
+    private static final MethodType CONSTRUCTOR_TYPE =
+        MethodType.methodType(Object.class, InvocationHandler.class);
+
+    public Object newProxyInstance(InvocationChain chain) {
+        return Proxy.newProxyInstance(InvocationChain.class.getClassLoader(), chain.getProxyInterfaces(), chain);
+    }
+
+    /**
+     * Makes one proxy up front to get hold of the proxy class, and
+     * then calls its constructor directly for every proxy after that.
+     */
+    public Function<InvocationChain, Object> newProxyFactory(InvocationChain prototype) {
+        Class<?> proxyClass = newProxyInstance(prototype).getClass();
+        MethodHandle constructor;
+        try {
+            Constructor<?> c = proxyClass.getConstructor(InvocationHandler.class);
+            c.setAccessible(true);
+            constructor = MethodHandles.publicLookup().unreflectConstructor(c).asType(CONSTRUCTOR_TYPE);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // newer JDKs keep proxy classes to themselves,
+            // though they still cache them for us
+            return this::newProxyInstance;
+        }
+        return chain -> {
+            try {
+                return (Object) constructor.invokeExact((InvocationHandler) chain);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        };
+    }
+
+}
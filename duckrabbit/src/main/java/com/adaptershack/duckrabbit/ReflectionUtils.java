@@ -0,0 +1,100 @@
+/*
+ * ReflectionUtils.java
+ *
+ * Created on January 18, 2005, 8:07 PM
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Utility methods for reflection, classes, interfaces, etc.
+ * @author jRobertson
+ */
+public class ReflectionUtils {
+
+    /**
+     * All the interfaces of each class, found by walking its graph the
+     * first time they're asked for, in the order they were found.
+     */
+    private static final ClassValue<Class<?>[]> ALL_INTERFACES = new ClassValue<Class<?>[]>() {
+        protected Class<?>[] computeValue(Class<?> c) {
+            Set<Class<?>> found = new LinkedHashSet<>();
+            for(Class<?> i : c.getInterfaces()) {
+                found.add(i);
+                Collections.addAll(found, get(i));
+            }
+            if( c.getSuperclass() != null ) {
+                Collections.addAll(found, get(c.getSuperclass()));
+            }
+            return found.toArray(new Class<?>[found.size()]);
+        }
+    };
+
+    /**
+     * Recursively walks the graph of all superclasses and interfaces
+     * that are related to the passed-in class, and adds all the Class
+     * objects representing all the interfaces that are found to the
+     * passed-in Set. The walk only happens once for each class; the
+     * answer is remembered after that.
+     */
+    public static Set<Class<?>> getAllInterfaces(Class<?> c) {
+        Set<Class<?>> s = new LinkedHashSet<>();
+        getAllInterfaces(c, s);
+        return s;
+    }
+
+    /**
+     * Recursively walks the graph of all superclasses and interfaces
+     * that are related to the passed-in class, and adds all the Class
+     * objects representing all the interfaces that are found to the
+     * passed-in Set. The walk only happens once for each class; the
+     * answer is remembered after that.
+     */
+    public static void getAllInterfaces(Class<?> c, Set<Class<?>> col) {
+
+        if(c == null) {
+            return;
+        }
+
+        Collections.addAll(col, ALL_INTERFACES.get(c));
+
+    }
+
+    /**
+     * Returns the given interfaces without any that are superinterfaces
+     * of others among them, since implementing the others implements
+     * those too, sorted by name. Any collection of the same interfaces,
+     * in whatever order and with whatever superinterfaces, gives the same
+     * array, so proxies made for them share a proxy class.
+     */
+    public static Class<?>[] getMinimalInterfaces(Collection<Class<?>> interfaces) {
+        List<Class<?>> minimal = new ArrayList<>();
+        for(Class<?> c : interfaces) {
+            if( minimal.contains(c) ) {
+                continue;
+            }
+            boolean implied = false;
+            for(Class<?> other : interfaces) {
+                if( other != c && c.isAssignableFrom(other) ) {
+                    implied = true;
+                    break;
+                }
+            }
+            if( !implied ) {
+                minimal.add(c);
+            }
+        }
+        minimal.sort(Comparator.comparing(Class::getName));
+        return minimal.toArray(new Class<?>[minimal.size()]);
+    }
+
+
+}
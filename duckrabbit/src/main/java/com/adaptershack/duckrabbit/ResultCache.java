@@ -0,0 +1,329 @@
+/*
+ * ResultCache.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+/**
+ * Remembers what methods called through a proxy returned, so that calling
+ * them again with the same arguments doesn't have to go to the object
+ * behind the proxy. This saves writing a DynamicDelegator just to memoize
+ * calls to something slow, like a remote lookup service.
+ * <p>
+ * Which methods are cached can be given by marking interface methods with
+ * the Cached annotation, or by calling cache() with a test for the methods
+ * wanted, or both. Likewise, calling a method marked InvalidatesCache, or
+ * one picked out by invalidateOn(), throws away everything remembered.
+ * <p>
+ * Results are kept per method, keyed by the values of the arguments, and
+ * each method has its own limit on how many it keeps; the least recently
+ * used is forgotten first. Results can also be given a time to live. If
+ * several threads call a method with the same arguments at the same time,
+ * and there's nothing remembered, only one of them calls the object; the
+ * others wait for its answer. Exceptions are not remembered.
+ * <p>
+ * A ResultCache remembers results without regard to which proxy they
+ * came from, so it should only be shared by proxies whose answers would be
+ * the same.
+ *
+ * @see InvocationChain#setResultCache(ResultCache)
+ * @see DynamicDelegator#resultCache
+ */
+public class ResultCache {
+
+    /** Marks methods that aren't cached, and don't invalidate anything. */
+    private static final MethodCache UNCACHED = new MethodCache(0, 0);
+
+    /** Marks methods that throw away everything when they are called. */
+    private static final MethodCache INVALIDATES = new MethodCache(0, 0);
+
+    private static final Key NO_ARGS = new Key(new Object[0]);
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<Predicate<Method>> invalidators = new ArrayList<>();
+
+    /**
+     * The cache for each method called so far, or UNCACHED or INVALIDATES.
+     * Copied when added to, as with the dispatch table.
+     */
+    private volatile Map<Method, MethodCache> methods = new IdentityHashMap<>();
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Creates a cache that caches the methods marked Cached, and is
+     * invalidated by the methods marked InvalidatesCache.
+     */
+    public ResultCache() {
+    }
+
+    /**
+     * Also caches the methods for which the given test is true, keeping
+     * up to maxSize results for each, for the given time. A ttl of zero
+     * means results are kept until evicted or invalidated. This must be
+     * done before any proxy that uses this cache is called.
+     */
+    public synchronized ResultCache cache(Predicate<Method> selector, int maxSize, long ttl, TimeUnit unit) {
+        if( maxSize <= 0 ) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        rules.add(new Rule(selector, maxSize, unit.toNanos(ttl)));
+        return this;
+    }
+
+    /**
+     * Also throws away everything remembered whenever a method for which
+     * the given test is true is called. This must be done before any
+     * proxy that uses this cache is called.
+     */
+    public synchronized ResultCache invalidateOn(Predicate<Method> selector) {
+        invalidators.add(selector);
+        return this;
+    }
+
+    /** The number of calls answered from the cache. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** The number of calls to cached methods that had to go to the object. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** The number of results forgotten to make room for newer ones. */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** The number of times everything was thrown away. */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Throws away everything remembered.
+     */
+    public void invalidateAll() {
+        invalidations.increment();
+        for(MethodCache c : methods.values()) {
+            c.clear();
+        }
+    }
+
+    /**
+     * Makes a call that came through a proxy, using a remembered result
+     * if there is one.
+     */
+    Object invoke(InvocationChain chain, Dispatch dispatch, Method method, Object[] args) throws Throwable {
+        MethodCache cache = methods.get(method);
+        if( cache == null ) {
+            cache = resolve(method);
+        }
+        if( cache == UNCACHED ) {
+            return chain.callTarget(dispatch, method, args);
+        }
+        if( cache == INVALIDATES ) {
+            try {
+                return chain.callTarget(dispatch, method, args);
+            } finally {
+                invalidateAll();
+            }
+        }
+        return cache.get(this, chain, dispatch, method, args);
+    }
+
+    /**
+     * Works out, once, whether a method is cached.
+     */
+    private synchronized MethodCache resolve(Method method) {
+        MethodCache cache = methods.get(method);
+        if( cache != null ) {
+            return cache;
+        }
+        cache = UNCACHED;
+        if( method.getReturnType() != void.class ) {
+            Cached cached = method.getAnnotation(Cached.class);
+            if( cached != null ) {
+                cache = new MethodCache(cached.maxSize(), TimeUnit.MILLISECONDS.toNanos(cached.ttlMillis()));
+            }
+            for(Rule r : rules) {
+                if( cache == UNCACHED && r.selector.test(method) ) {
+                    cache = new MethodCache(r.maxSize, r.ttlNanos);
+                }
+            }
+        }
+        if( cache == UNCACHED ) {
+            if( method.isAnnotationPresent(InvalidatesCache.class) ) {
+                cache = INVALIDATES;
+            }
+            for(Predicate<Method> p : invalidators) {
+                if( p.test(method) ) {
+                    cache = INVALIDATES;
+                }
+            }
+        }
+        Map<Method, MethodCache> table = new IdentityHashMap<>(methods);
+        table.put(method, cache);
+        methods = table;
+        return cache;
+    }
+
+    private static final class Rule {
+        final Predicate<Method> selector;
+        final int maxSize;
+        final long ttlNanos;
+
+        Rule(Predicate<Method> selector, int maxSize, long ttlNanos) {
+            this.selector = selector;
+            this.maxSize = maxSize;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+
+    /**
+     * The results remembered for one method. The map is small and only
+     * locked long enough to look up or add an entry; the call to the
+     * object itself happens outside the lock.
+     */
+    static final class MethodCache {
+        private final long ttlNanos;
+        private final LinkedHashMap<Key, Result> entries;
+        private int evicted;
+
+        MethodCache(int maxSize, long ttlNanos) {
+            this.ttlNanos = ttlNanos;
+            this.entries = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                    if( size() > maxSize ) {
+                        evicted++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Object get(ResultCache owner, InvocationChain chain, Dispatch dispatch, Method method, Object[] args)
+                throws Throwable {
+            Key key = args == null || args.length == 0 ? NO_ARGS : new Key(args.clone());
+            Result entry;
+            boolean loading = false;
+            synchronized(entries) {
+                entry = entries.get(key);
+                if( entry == null || entry.isExpired() ) {
+                    entry = new Result(ttlNanos);
+                    entries.put(key, entry);
+                    loading = true;
+                }
+                if( evicted > 0 ) {
+                    owner.evictions.add(evicted);
+                    evicted = 0;
+                }
+            }
+
+            if( !loading ) {
+                owner.hits.increment();
+                return entry.await();
+            }
+
+            owner.misses.increment();
+            try {
+                Object result = chain.callTarget(dispatch, method, args);
+                entry.future.complete(result);
+                return result;
+            } catch (Throwable t) {
+                synchronized(entries) {
+                    entries.remove(key, entry);
+                }
+                entry.future.completeExceptionally(t);
+                throw t;
+            }
+        }
+
+        void clear() {
+            synchronized(entries) {
+                entries.clear();
+            }
+        }
+    }
+
+    /**
+     * A result, or one that is on its way.
+     */
+    private static final class Result {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final long expires;
+
+        Result(long ttlNanos) {
+            expires = ttlNanos == 0 ? 0 : System.nanoTime() + ttlNanos;
+        }
+
+        boolean isExpired() {
+            return expires != 0 && System.nanoTime() - expires > 0;
+        }
+
+        Object await() throws Throwable {
+            boolean interrupted = false;
+            try {
+                for(;;) {
+                    try {
+                        return future.get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if( interrupted ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * The arguments of a call, compared by value.
+     */
+    private static final class Key {
+        private final Object[] args;
+        private final int hash;
+
+        Key(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.deepHashCode(args);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.deepEquals(args, ((Key) o).args);
+        }
+    }
+
+}
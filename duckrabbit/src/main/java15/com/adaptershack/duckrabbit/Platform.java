@@ -0,0 +1,123 @@
+/*
+ * Platform.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The Java 15 version of Platform, used from the multi-release jar. On
+ * top of what the Java 9 version does, generated classes are defined as
+ * hidden classes in this package whenever everything they refer to can
+ * be seen from here. Hidden classes don't need a class loader each, and
+ * go away as soon as nothing refers to them.
+ */
+final class Platform {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String OWN_LOADER_PACKAGE = GeneratedProxyEngine.PACKAGE.replace('/', '.');
+
+    private Platform() {
+    }
+
+    /**
+     * The engine used when none is asked for. From Java 9 on this is
+     * the generated engine, which falls back on reflection by itself
+     * for anything it can't do.
+     * @see ProxyEngine#getDefault()
+     */
+    static ProxyEngine defaultEngine() {
+        return ProxyEngine.GENERATED;
+    }
+
+    /**
+     * Returns a handle for a method that isn't public, or whose class
+     * isn't, through a private Lookup in its class.
+     * @throws IllegalAccessException if its module isn't open to us
+     */
+    static MethodHandle unreflectPrivate(Method m) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(m.getDeclaringClass(), LOOKUP).unreflect(m);
+    }
+
+    /**
+     * Returns a handle that runs an interface's default method as written
+     * in the interface, whatever the object it's called on does, through
+     * a private Lookup in the interface.
+     * @throws IllegalAccessException if its module isn't open to us
+     */
+    static MethodHandle unreflectSpecial(Method m) throws IllegalAccessException {
+        Class<?> declarer = m.getDeclaringClass();
+        return MethodHandles.privateLookupIn(declarer, LOOKUP).unreflectSpecial(m, declarer);
+    }
+
+    /**
+     * The package, as an internal name ending in a slash, to put a
+     * generated class for the given interfaces and delegate classes in.
+     * A hidden class has to be in this package, and can only see what
+     * this class's loader can, so anything else gets a loader of its own.
+     */
+    static String packageFor(Class<?>[] interfaces, Class<?>[] classes) {
+        if( visible(interfaces) && visible(classes) ) {
+            return GeneratedProxyEngine.HIDDEN_PACKAGE;
+        }
+        return GeneratedProxyEngine.PACKAGE;
+    }
+
+    /**
+     * Defines and initializes a generated class, as a hidden class if
+     * packageFor put it in this package.
+     */
+    static Class<?> define(String className, byte[] bytes, Class<?>[] interfaces, Class<?>[] classes)
+            throws ClassNotFoundException {
+        if( className.startsWith(OWN_LOADER_PACKAGE) ) {
+            return GeneratedProxyEngine.defineInOwnLoader(className, bytes, interfaces, classes);
+        }
+        try {
+            return LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+        } catch (IllegalAccessException e) {
+            throw new ClassNotFoundException(className, e);
+        }
+    }
+
+    private static boolean visible(Class<?>[] types) {
+        ClassLoader loader = Platform.class.getClassLoader();
+        for(Class<?> c : types) {
+            try {
+                if( Class.forName(c.getName(), false, loader) != c ) {
+                    return false;
+                }
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unmaps a buffer right away, rather than whenever it is garbage
+     * collected, through Unsafe.invokeCleaner. Nothing may touch the
+     * buffer after this.
+     * @return false if it couldn't be done
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafe.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Platform.java
+ *
+ * Created on October 16, 2026
+ */
+
+package com.adaptershack.duckrabbit;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * The Java 9 version of Platform, used from the multi-release jar. Java 9
+ * can hand out a private Lookup in another class, which gets at methods
+ * that aren't public without touching setAccessible, and which modules
+ * that are open to us allow.
+ */
+final class Platform {
+
+    private Platform() {
+    }
+
+    /**
+     * The engine used when none is asked for. From Java 9 on this is
+     * the generated engine, which falls back on reflection by itself
+     * for anything it can't do.
+     * @see ProxyEngine#getDefault()
+     */
+    static ProxyEngine defaultEngine() {
+        return ProxyEngine.GENERATED;
+    }
+
+    /**
+     * Returns a handle for a method that isn't public, or whose class
+     * isn't, through a private Lookup in its class.
+     * @throws IllegalAccessException if its module isn't open to us
+     */
+    static MethodHandle unreflectPrivate(Method m) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(m.getDeclaringClass(), MethodHandles.lookup()).unreflect(m);
+    }
+
+    /**
+     * Returns a handle that runs an interface's default method as written
+     * in the interface, whatever the object it's called on does, through
+     * a private Lookup in the interface.
+     * @throws IllegalAccessException if its module isn't open to us
+     */
+    static MethodHandle unreflectSpecial(Method m) throws IllegalAccessException {
+        Class<?> declarer = m.getDeclaringClass();
+        return MethodHandles.privateLookupIn(declarer, MethodHandles.lookup()).unreflectSpecial(m, declarer);
+    }
+
+    /**
+     * The package, as an internal name ending in a slash, to put a
+     * generated class for the given interfaces and delegate classes in.
+     */
+    static String packageFor(Class<?>[] interfaces, Class<?>[] classes) {
+        return GeneratedProxyEngine.PACKAGE;
+    }
+
+    /**
+     * Defines and initializes a generated class, which needs to be able
+     * to see the given interfaces and delegate classes, in a class loader
+     * of its own.
+     */
+    static Class<?> define(String className, byte[] bytes, Class<?>[] interfaces, Class<?>[] classes)
+            throws ClassNotFoundException {
+        return GeneratedProxyEngine.defineInOwnLoader(className, bytes, interfaces, classes);
+    }
+
+    /**
+     * Unmaps a buffer right away, rather than whenever it is garbage
+     * collected, through Unsafe.invokeCleaner. Nothing may touch the
+     * buffer after this.
+     * @return false if it couldn't be done
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafe.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,216 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AsyncDispatcherTest {
+
+	public interface Audit {
+		void record(int event);
+		CompletableFuture<String> lookup(String key);
+		int size();
+	}
+
+	public static class SlowAudit implements Audit {
+		final List<Integer> events = Collections.synchronizedList(new ArrayList<>());
+		final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+		volatile CountDownLatch gate = new CountDownLatch(0);
+
+		public void record(int event) {
+			threads.add(Thread.currentThread().getName());
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			if (event < 0) {
+				throw new IllegalArgumentException("negative");
+			}
+			events.add(event);
+		}
+
+		public CompletableFuture<String> lookup(String key) {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			if (key == null) {
+				throw new IllegalArgumentException("no key");
+			}
+			return CompletableFuture.completedFuture(key.toUpperCase());
+		}
+
+		public int size() {
+			return events.size();
+		}
+	}
+
+	private static Audit async(Audit target, AsyncDispatcher dispatcher) {
+		return new DynamicDelegator<Audit>(target) {
+			{
+				asyncDispatcher = dispatcher;
+			}
+		}.getProxy();
+	}
+
+	@Test
+	public void testVoidReturnsAtOnce() throws Exception {
+
+		SlowAudit target = new SlowAudit();
+		target.gate = new CountDownLatch(1);
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+		AsyncDispatcher dispatcher = new AsyncDispatcher().onError(errors::add);
+		Audit audit = async(target, dispatcher);
+
+		audit.record(1);
+		audit.record(-1);
+		assertEquals(0, audit.size());
+		assertEquals(2, dispatcher.getPending());
+
+		target.gate.countDown();
+		assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList(1), target.events);
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0) instanceof IllegalArgumentException);
+
+		try {
+			audit.record(2);
+			fail();
+		} catch (RejectedExecutionException e) {
+			// shut down
+		}
+		// methods that aren't selected still work
+		assertEquals(1, audit.size());
+	}
+
+	@Test
+	public void testFutures() throws Exception {
+
+		AsyncDispatcher dispatcher = new AsyncDispatcher();
+		Audit audit = async(new SlowAudit(), dispatcher);
+
+		assertEquals("ABC", audit.lookup("abc").get(5, TimeUnit.SECONDS));
+		try {
+			audit.lookup(null).get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		dispatcher.close();
+	}
+
+	@Test
+	public void testOrderedAndBounded() throws Exception {
+
+		SlowAudit target = new SlowAudit();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		AsyncDispatcher dispatcher = new AsyncDispatcher(AsyncDispatcher.VOID_OR_FUTURE, pool)
+			.ordered(true)
+			.maxPending(8);
+		Audit audit = async(target, dispatcher);
+
+		List<Integer> expected = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			audit.record(i);
+			expected.add(i);
+			assertTrue(dispatcher.getPending() <= 8);
+		}
+		assertTrue(dispatcher.drain(5, TimeUnit.SECONDS));
+		assertEquals(expected, target.events);
+		pool.shutdown();
+	}
+
+	@Test
+	public void testLanesPerProxy() throws Exception {
+
+		SlowAudit stuck = new SlowAudit();
+		stuck.gate = new CountDownLatch(1);
+		SlowAudit free = new SlowAudit();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		AsyncDispatcher dispatcher = new AsyncDispatcher(AsyncDispatcher.VOID_OR_FUTURE, pool).ordered(true);
+		Audit first = async(stuck, dispatcher);
+		Audit second = async(free, dispatcher);
+
+		first.record(1);
+		first.record(2);
+		for (int i = 0; i < 10; i++) {
+			second.record(i);
+		}
+		// the other proxy's calls aren't held up behind the stuck ones
+		for (int i = 0; i < 500 && free.size() < 10; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(10, free.size());
+		assertEquals(0, stuck.size());
+
+		stuck.gate.countDown();
+		assertTrue(dispatcher.drain(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2), stuck.events);
+
+		// and lanes with nothing to do are let go
+		for (int i = 0; i < 500 && dispatcher.getLaneCount() > 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, dispatcher.getLaneCount());
+		pool.shutdown();
+	}
+
+	@Test
+	public void testBoundHeldUntilCallsFinish() throws Exception {
+
+		SlowAudit target = new SlowAudit();
+		target.gate = new CountDownLatch(1);
+		AsyncDispatcher dispatcher = new AsyncDispatcher().maxPending(1);
+		Audit audit = async(target, dispatcher);
+
+		// cancelling the caller's future doesn't free up room
+		audit.lookup("a").cancel(true);
+		assertEquals(1, dispatcher.getPending());
+
+		// and waiting for room can be interrupted
+		Thread.currentThread().interrupt();
+		try {
+			audit.record(1);
+			fail();
+		} catch (RejectedExecutionException e) {
+			assertTrue(Thread.interrupted());
+		}
+
+		target.gate.countDown();
+		assertTrue(dispatcher.drain(5, TimeUnit.SECONDS));
+		assertEquals(0, dispatcher.getPending());
+		dispatcher.close();
+	}
+
+	@Test
+	public void testDrainTimesOut() throws Exception {
+
+		SlowAudit target = new SlowAudit();
+		target.gate = new CountDownLatch(1);
+		AsyncDispatcher dispatcher = new AsyncDispatcher();
+		Audit audit = async(target, dispatcher);
+
+		audit.record(1);
+		assertFalse(dispatcher.drain(20, TimeUnit.MILLISECONDS));
+		target.gate.countDown();
+		assertTrue(dispatcher.drain(5, TimeUnit.SECONDS));
+	}
+
+}
@@ -0,0 +1,184 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.adaptershack.duckrabbit.DispatchPlan.Dispatch;
+
+public class BroadcasterTest {
+
+	public interface Listener {
+		void onEvent(String event);
+		boolean isHealthy();
+		String name();
+		List<Object> names();
+	}
+
+	public static class Node {
+		final String name;
+		final List<String> seen = Collections.synchronizedList(new ArrayList<>());
+		final long delay;
+
+		Node(String name, long delay) {
+			this.name = name;
+			this.delay = delay;
+		}
+
+		public void onEvent(String event) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			if (event == null) {
+				throw new IllegalArgumentException(name);
+			}
+			seen.add(event);
+		}
+
+		public boolean isHealthy() {
+			return !name.startsWith("sick");
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public List<Object> names() {
+			return Collections.singletonList(name);
+		}
+	}
+
+	public static class Quiet {
+		public String name() {
+			return null;
+		}
+	}
+
+	@Test
+	public void testSequential() {
+
+		Node a = new Node("a", 0);
+		Node b = new Node("b", 0);
+		Broadcaster broadcaster = new Broadcaster()
+			.reduceWith(m -> m.getName().equals("isHealthy"), Broadcaster.ALL_TRUE)
+			.reduceWith(m -> m.getName().equals("names"), Broadcaster.TO_LIST);
+		Listener l = broadcaster.newProxy(Listener.class, new Quiet(), a, b);
+
+		l.onEvent("hello");
+		assertEquals(Arrays.asList("hello"), a.seen);
+		assertEquals(Arrays.asList("hello"), b.seen);
+
+		// Quiet returns null, so the first non-null is from a
+		assertEquals("a", l.name());
+		assertTrue(l.isHealthy());
+		assertEquals(Arrays.asList(Collections.singletonList("a"), Collections.singletonList("b")), l.names());
+
+		Listener sick = new Broadcaster()
+			.reduceWith(Broadcaster.ALL_TRUE)
+			.newProxy(Listener.class, a, new Node("sick", 0));
+		assertFalse(sick.isHealthy());
+	}
+
+	@Test
+	public void testPromotion() throws Exception {
+
+		int before = Invoker.promoteAfter;
+		Invoker.promoteAfter = 100;
+		try {
+			InvocationChain chain = new InvocationChain(new Node("a", 0), new Node("b", 0));
+			chain.addInterface(Listener.class);
+			chain.setBroadcaster(new Broadcaster());
+			Listener l = (Listener) chain.newProxyInstance(ProxyEngine.REFLECTION);
+
+			java.lang.reflect.Method name = Listener.class.getMethod("name");
+			Invoker invoker = chain.dispatchAll(name)[1].invoker;
+			for (int i = 0; i < 200; i++) {
+				assertEquals("a", l.name());
+			}
+			for (int i = 0; i < 500 && !invoker.isPromoted(); i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(invoker.isPromoted());
+
+			// every link is called through what it was promoted to
+			assertEquals("a", l.name());
+			for (Dispatch d : chain.dispatchAll(name)) {
+				assertTrue(d.invoker != invoker);
+			}
+		} finally {
+			Invoker.promoteAfter = before;
+		}
+	}
+
+	@Test
+	public void testExceptionsAreSuppressed() {
+
+		Node a = new Node("a", 0);
+		Node b = new Node("b", 0);
+		Listener l = new Broadcaster().newProxy(Listener.class, a, b);
+
+		try {
+			l.onEvent(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("a", e.getMessage());
+			assertEquals(1, e.getSuppressed().length);
+			assertEquals("b", e.getSuppressed()[0].getMessage());
+		}
+	}
+
+	@Test
+	public void testParallel() {
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Node> nodes = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			nodes.add(new Node("n" + i, 100));
+		}
+		Listener l = new Broadcaster(pool).newProxy(Listener.class, nodes.toArray());
+
+		long start = System.nanoTime();
+		l.onEvent("go");
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		for (Node n : nodes) {
+			assertEquals(Arrays.asList("go"), n.seen);
+		}
+		// the four calls overlap, rather than taking 400ms in all
+		assertTrue("took " + millis + "ms", millis < 350);
+		pool.shutdown();
+	}
+
+	@Test
+	public void testFromInsideThePool() throws Exception {
+
+		// a single worker, busy making the call itself, can't run the others
+		ForkJoinPool pool = new ForkJoinPool(1);
+		List<Node> nodes = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			nodes.add(new Node("n" + i, 10));
+		}
+		Listener l = new Broadcaster(pool).newProxy(Listener.class, nodes.toArray());
+
+		pool.submit(() -> l.onEvent("go")).get(5, TimeUnit.SECONDS);
+		for (Node n : nodes) {
+			assertEquals(Arrays.asList("go"), n.seen);
+		}
+		pool.shutdown();
+	}
+
+}
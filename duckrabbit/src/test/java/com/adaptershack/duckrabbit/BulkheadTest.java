@@ -0,0 +1,184 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.adaptershack.duckrabbit.Bulkhead.Compartment;
+
+public class BulkheadTest {
+
+	public interface Database {
+		String query(String sql);
+		void commit();
+	}
+
+	public static class SlowDatabase implements Database {
+		final CountDownLatch started = new CountDownLatch(2);
+		volatile CountDownLatch gate = new CountDownLatch(0);
+
+		public String query(String sql) {
+			started.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return sql.toUpperCase();
+		}
+
+		public void commit() {
+		}
+	}
+
+	private static Database limited(Database target, Bulkhead limit) {
+		return new DynamicDelegator<Database>(target) {
+			{
+				bulkhead = limit;
+			}
+		}.getProxy();
+	}
+
+	@Test
+	public void testFailFast() throws Exception {
+		SlowDatabase db = new SlowDatabase();
+		db.gate = new CountDownLatch(1);
+		Bulkhead limit = new Bulkhead(2);
+		Database proxy = limited(db, limit);
+
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<String>> running = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				running.add(pool.submit(() -> proxy.query("select")));
+			}
+			assertTrue(db.started.await(5, TimeUnit.SECONDS));
+			assertEquals(2, limit.getInFlight());
+
+			try {
+				proxy.commit();
+				fail();
+			} catch (RejectedExecutionException e) {
+				// full
+			}
+			assertEquals(1, limit.getRejected());
+
+			db.gate.countDown();
+			for (Future<String> f : running) {
+				assertEquals("SELECT", f.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(0, limit.getInFlight());
+			proxy.commit();
+
+			Compartment c = limit.getCompartments().get(0);
+			assertEquals(2, c.getPeakInFlight());
+			assertEquals(3, c.getAdmitted());
+			assertEquals(0, c.getWaited());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testGroupsAndWaiting() throws Exception {
+		SlowDatabase db = new SlowDatabase();
+		db.gate = new CountDownLatch(1);
+		Bulkhead limit = new Bulkhead(1)
+			.group("queries", m -> m.getName().equals("query"), 2)
+			.maxWait(50, TimeUnit.MILLISECONDS);
+		Database proxy = limited(db, limit);
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			List<Future<String>> running = new ArrayList<>();
+			for (int i = 0; i < 2; i++) {
+				running.add(pool.submit(() -> proxy.query("select")));
+			}
+			assertTrue(db.started.await(5, TimeUnit.SECONDS));
+
+			// queries don't use up the room commits have
+			proxy.commit();
+
+			// another query waits, then gives up
+			long start = System.nanoTime();
+			try {
+				proxy.query("select");
+				fail();
+			} catch (RejectedExecutionException e) {
+				assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+			}
+
+			// this one waits, and gets in when one of the others finishes
+			limit.maxWait(5, TimeUnit.SECONDS);
+			Future<String> waiting = pool.submit(() -> proxy.query("third"));
+			Compartment queries = limit.getCompartments().get(1);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (queries.getWaiting() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertEquals(1, queries.getWaiting());
+			assertEquals(1.5, queries.getSaturation(), 0.001);
+			db.gate.countDown();
+			assertEquals("THIRD", waiting.get(5, TimeUnit.SECONDS));
+			for (Future<String> f : running) {
+				assertEquals("SELECT", f.get(5, TimeUnit.SECONDS));
+			}
+
+			assertEquals("queries", queries.getName());
+			assertEquals(3, queries.getAdmitted());
+			assertEquals(1, queries.getRejected());
+			assertEquals(2, queries.getWaited());
+			assertTrue(queries.getWaitNanos() > 0);
+			assertEquals(1, limit.getCompartments().get(0).getAdmitted());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testShared() throws Exception {
+		SlowDatabase one = new SlowDatabase();
+		SlowDatabase two = new SlowDatabase();
+		one.gate = new CountDownLatch(1);
+		Bulkhead limit = new Bulkhead(1);
+		Database first = limited(one, limit);
+		Database second = limited(two, limit);
+
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> running = pool.submit(() -> first.query("select"));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (one.started.getCount() == 2 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			try {
+				second.query("select");
+				fail();
+			} catch (RejectedExecutionException e) {
+				// the other proxy has the only place
+			}
+			one.gate.countDown();
+			assertEquals("SELECT", running.get(5, TimeUnit.SECONDS));
+			assertEquals("SELECT", second.query("select"));
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadLimit() {
+		new Bulkhead(0);
+	}
+
+}
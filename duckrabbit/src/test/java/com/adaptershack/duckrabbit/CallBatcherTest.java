@@ -0,0 +1,207 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CallBatcherTest {
+
+	public interface Sink {
+		void emit(String metric);
+		void emitAll(List<String> metrics);
+		int count();
+	}
+
+	public static class RecordingSink implements Sink {
+		final List<String> received = Collections.synchronizedList(new ArrayList<>());
+		final List<Integer> bulkSizes = Collections.synchronizedList(new ArrayList<>());
+
+		public void emit(String metric) {
+			received.add(metric);
+		}
+		public void emitAll(List<String> metrics) {
+			bulkSizes.add(metrics.size());
+			received.addAll(metrics);
+		}
+		public int count() {
+			return received.size();
+		}
+	}
+
+	private static Sink batched(Sink target, CallBatcher batcher) {
+		return new DynamicDelegator<Sink>(target) {
+			{
+				callBatcher = batcher;
+			}
+		}.getProxy();
+	}
+
+	private static boolean isEmit(java.lang.reflect.Method m) {
+		return m.getName().equals("emit");
+	}
+
+	@Test
+	public void testReplayBySize() {
+
+		RecordingSink target = new RecordingSink();
+		CallBatcher batcher = new CallBatcher(3, 0, TimeUnit.SECONDS).batch(CallBatcherTest::isEmit);
+		Sink sink = batched(target, batcher);
+
+		sink.emit("a");
+		sink.emit("b");
+		assertTrue(target.received.isEmpty());
+		assertEquals(2, batcher.getQueued());
+		sink.emit("c");
+		assertEquals(Arrays.asList("a", "b", "c"), target.received);
+
+		// calls to other methods see everything that came before
+		sink.emit("d");
+		assertEquals(4, sink.count());
+
+		assertEquals(2, batcher.getBatches());
+		assertEquals(4, batcher.getBatchedCalls());
+		assertEquals(3, batcher.getLargestBatch());
+		assertEquals(2.0, batcher.getMeanBatchSize(), 0.001);
+	}
+
+	@Test
+	public void testBulk() {
+
+		RecordingSink target = new RecordingSink();
+		CallBatcher batcher = new CallBatcher(100, 0, TimeUnit.SECONDS)
+			.batch(CallBatcherTest::isEmit, (t, calls) -> {
+				List<String> metrics = new ArrayList<>();
+				for (Object[] args : calls) {
+					metrics.add((String) args[0]);
+				}
+				((Sink) t).emitAll(metrics);
+			});
+		Sink sink = batched(target, batcher);
+
+		for (int i = 0; i < 10; i++) {
+			sink.emit("m" + i);
+		}
+		assertTrue(target.received.isEmpty());
+		batcher.flush();
+		assertEquals(10, target.received.size());
+		assertEquals(Collections.singletonList(10), target.bulkSizes);
+
+		batcher.close();
+		sink.emit("after");
+		assertEquals(11, target.received.size());
+	}
+
+	@Test
+	public void testBatchesGoThroughTheChain() {
+
+		RecordingSink target = new RecordingSink();
+		Bulkhead limit = new Bulkhead(1);
+		List<Integer> inFlight = new ArrayList<>();
+		CallBatcher batcher = new CallBatcher(2, 0, TimeUnit.SECONDS)
+			.batch(CallBatcherTest::isEmit, (t, calls) -> {
+				inFlight.add(limit.getInFlight());
+				for (Object[] args : calls) {
+					((Sink) t).emit((String) args[0]);
+				}
+			});
+		Sink sink = new DynamicDelegator<Sink>(target) {
+			{
+				callBatcher = batcher;
+				bulkhead = limit;
+			}
+		}.getProxy();
+
+		sink.emit("a");
+		sink.emit("b");
+		assertEquals(Arrays.asList("a", "b"), target.received);
+		// the whole batch took one place in the bulkhead
+		assertEquals(Collections.singletonList(1), inFlight);
+		assertEquals(1, limit.getCompartments().get(0).getAdmitted());
+	}
+
+	@Test
+	public void testTimer() throws Exception {
+
+		RecordingSink target = new RecordingSink();
+		CallBatcher batcher = new CallBatcher(1000, 20, TimeUnit.MILLISECONDS).batch(CallBatcherTest::isEmit);
+		Sink sink = batched(target, batcher);
+
+		sink.emit("a");
+		for (int i = 0; i < 100 && target.received.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(Collections.singletonList("a"), target.received);
+		batcher.close();
+	}
+
+	@Test
+	public void testSlowSinkHoldsUpNoOtherBatcher() throws Exception {
+
+		CountDownLatch gate = new CountDownLatch(1);
+		RecordingSink stuck = new RecordingSink() {
+			@Override
+			public void emit(String metric) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				super.emit(metric);
+			}
+		};
+		CallBatcher slow = new CallBatcher(1000, 10, TimeUnit.MILLISECONDS).batch(CallBatcherTest::isEmit);
+		batched(stuck, slow).emit("stuck");
+
+		RecordingSink target = new RecordingSink();
+		CallBatcher batcher = new CallBatcher(1000, 20, TimeUnit.MILLISECONDS).batch(CallBatcherTest::isEmit);
+		Sink sink = batched(target, batcher);
+		Thread.sleep(50);
+
+		sink.emit("a");
+		for (int i = 0; i < 100 && target.received.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(Collections.singletonList("a"), target.received);
+		assertTrue(stuck.received.isEmpty());
+
+		gate.countDown();
+		slow.close();
+		assertEquals(Collections.singletonList("stuck"), stuck.received);
+		batcher.close();
+	}
+
+	@Test
+	public void testConcurrentCallsAllArrive() throws Exception {
+
+		RecordingSink target = new RecordingSink();
+		CallBatcher batcher = new CallBatcher(16, 5, TimeUnit.MILLISECONDS).batch(CallBatcherTest::isEmit);
+		Sink sink = batched(target, batcher);
+
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					sink.emit("x");
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		batcher.close();
+		assertEquals(4000, target.received.size());
+		assertEquals(4000, batcher.getBatchedCalls());
+	}
+
+}
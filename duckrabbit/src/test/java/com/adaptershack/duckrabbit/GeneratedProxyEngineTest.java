@@ -0,0 +1,226 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.adaptershack.duckrabbit.DuckTest.Duck;
+
+public class GeneratedProxyEngineTest {
+
+	public static class Mallard implements Duck {
+		public String speak() {
+			return "Quack!";
+		}
+		public boolean canWalk() {
+			return true;
+		}
+		public boolean canSwim() {
+			return true;
+		}
+		public boolean canFly() {
+			return true;
+		}
+		public boolean inSeason() {
+			return false;
+		}
+	}
+
+	public interface Counter {
+		long add(int a, long b, double c);
+		void fail() throws IOException;
+	}
+
+	interface Hidden {
+		String peek();
+	}
+
+	public static class CountingEngine implements ProxyEngine {
+		int made;
+
+		public Object newProxyInstance(InvocationChain chain) {
+			made++;
+			return REFLECTION.newProxyInstance(chain);
+		}
+	}
+
+	private Duck daffy(Duck impl) {
+		return new DynamicDelegator<Duck>(impl) {
+			@SuppressWarnings("unused")
+			public String speak() {
+				return "You're despicable";
+			}
+		}.getProxy(ProxyEngine.GENERATED);
+	}
+
+	@Test
+	public void testGeneratedDuck() {
+
+		Duck daffy = daffy(new Mallard());
+
+		assertFalse(Proxy.isProxyClass(daffy.getClass()));
+
+		// override, through a handle since the anonymous class isn't public
+		assertEquals("You're despicable", daffy.speak());
+
+		// straight through to the delegate
+		assertTrue(daffy.canFly());
+		assertTrue(daffy.canSwim());
+		assertFalse(daffy.inSeason());
+
+		// Object's methods still go through the chain
+		assertEquals(daffy.hashCode(), daffy.hashCode());
+		assertTrue(daffy.toString().length() > 0);
+
+		// same shape, same class
+		assertSame(daffy.getClass(), daffy(new Mallard()).getClass());
+	}
+
+	@Test
+	public void testUnimplemented() {
+
+		Duck cold = new DynamicDelegator<Duck>(Duck.class) {
+			@SuppressWarnings("unused")
+			public String speak() {
+				return "Brr";
+			}
+		}.getProxy(ProxyEngine.GENERATED);
+
+		// nothing to delegate to, so this is an ordinary proxy
+		assertEquals("Brr", cold.speak());
+
+		Duck partial = DynamicDelegator.getProxy(ProxyEngine.GENERATED, Duck.class, new Object() {
+			@SuppressWarnings("unused")
+			public String speak() {
+				return "Brr";
+			}
+		});
+
+		assertFalse(Proxy.isProxyClass(partial.getClass()));
+		assertEquals("Brr", partial.speak());
+		try {
+			partial.canSwim();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// don't say we didn't warn you
+		}
+	}
+
+	@Test
+	public void testPrimitivesAndExceptions() {
+
+		Counter counter = DynamicDelegator.getProxy(ProxyEngine.GENERATED, Counter.class, new Object() {
+			@SuppressWarnings("unused")
+			public long add(int a, long b, double c) {
+				return a + b + (long) c;
+			}
+			@SuppressWarnings("unused")
+			public void fail() throws IOException {
+				throw new IOException("boom");
+			}
+		});
+
+		assertEquals(6L, counter.add(1, 2L, 3.0));
+		try {
+			counter.fail();
+			fail();
+		} catch (IOException e) {
+			assertEquals("boom", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNonPublicInterfaceFallsBack() {
+
+		Hidden hidden = DynamicDelegator.getProxy(ProxyEngine.GENERATED, Hidden.class, new Object() {
+			@SuppressWarnings("unused")
+			public String peek() {
+				return "boo";
+			}
+		});
+
+		assertTrue(Proxy.isProxyClass(hidden.getClass()));
+		assertEquals("boo", hidden.peek());
+	}
+
+	@Test
+	public void testBootstrapIsOnlyForGeneratedClasses() {
+
+		try {
+			GeneratedProxyEngine.bootstrap(MethodHandles.lookup());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// not a generated class
+		}
+		Duck duck = DynamicDelegator.getProxy(ProxyEngine.GENERATED, Duck.class, new Mallard());
+		try {
+			GeneratedProxyEngine.bootstrap(MethodHandles.publicLookup().in(duck.getClass()));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// not its own Lookup
+		}
+	}
+
+	@Test
+	public void testChoosingEngine() {
+
+		CountingEngine counting = new CountingEngine();
+		Iterable<ProxyEngine> none = Collections.emptyList();
+
+		assertSame(ProxyEngine.GENERATED, ProxyEngines.choose("generated", Collections.singletonList(counting)));
+		assertSame(ProxyEngine.REFLECTION, ProxyEngines.choose(" Reflection ", none));
+		assertSame(counting, ProxyEngines.choose(null, Collections.singletonList(counting)));
+		assertSame(counting, ProxyEngines.choose(CountingEngine.class.getName(), Collections.singletonList(counting)));
+		assertTrue(ProxyEngines.choose(CountingEngine.class.getName(), none) instanceof CountingEngine);
+
+		// unknown names, and nothing else to go on, give the platform's own
+		assertSame(Platform.defaultEngine(), ProxyEngines.choose("no.such.Engine", none));
+		assertSame(Platform.defaultEngine(), ProxyEngines.choose("", none));
+
+		Duck duck = DynamicDelegator.getProxy(counting, Duck.class, new Mallard());
+		assertEquals("Quack!", duck.speak());
+		assertEquals(1, counting.made);
+	}
+
+	@Test
+	public void testCacheOwner() throws Exception {
+
+		// kept with the delegate, or with this library if the delegate is the JDK's
+		assertSame(Mallard.class,
+			GeneratedProxyEngine.ownerOf(new Class<?>[] { Duck.class }, new Class<?>[] { Mallard.class }));
+		assertSame(GeneratedProxyEngine.class,
+			GeneratedProxyEngine.ownerOf(new Class<?>[] { Runnable.class }, new Class<?>[] { Thread.class }));
+
+		// classes no one loader can see along with this library aren't kept anywhere
+		URL here = Mallard.class.getProtectionDomain().getCodeSource().getLocation();
+		try (URLClassLoader apart = new URLClassLoader(new URL[] { here }, null)) {
+			Class<?> mallard = apart.loadClass(Mallard.class.getName());
+			Class<?> duck = apart.loadClass(Duck.class.getName());
+			assertNull(GeneratedProxyEngine.ownerOf(new Class<?>[] { duck }, new Class<?>[] { mallard }));
+		}
+
+		// a JDK interface over a class of ours is found again without asking the loaders
+		Runnable first = (Runnable) new InvocationChain(new Ticker()).newProxyInstance(ProxyEngine.GENERATED);
+		Runnable second = (Runnable) new InvocationChain(new Ticker()).newProxyInstance(ProxyEngine.GENERATED);
+		assertFalse(Proxy.isProxyClass(first.getClass()));
+		assertSame(first.getClass(), second.getClass());
+	}
+
+	public static class Ticker implements Runnable {
+		public void run() {
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class InterceptorTest {
+
+	public interface Account {
+		int balance(String owner);
+		void deposit(String owner, int amount);
+	}
+
+	public static class Flaky implements Account {
+		final AtomicInteger failuresLeft = new AtomicInteger();
+		int total;
+
+		public int balance(String owner) {
+			if (failuresLeft.getAndDecrement() > 0) {
+				throw new IllegalStateException("try again");
+			}
+			return total;
+		}
+
+		public void deposit(String owner, int amount) {
+			total += amount;
+		}
+	}
+
+	@Test
+	public void testOrder() {
+
+		List<String> seen = new ArrayList<>();
+		InvocationChain chain = new InvocationChain(new Flaky());
+		chain.addInterceptor((method, args, next) -> {
+			seen.add("outer " + method.getName());
+			Object result = next.proceed(args);
+			seen.add("outer done");
+			return result;
+		});
+		chain.addInterceptor((method, args, next) -> {
+			seen.add("inner " + method.getName());
+			return next.proceed(args);
+		});
+		Account account = (Account) chain.newProxyInstance();
+
+		account.deposit("ann", 5);
+		assertEquals(5, account.balance("ann"));
+		assertEquals("[outer deposit, inner deposit, outer done, "
+			+ "outer balance, inner balance, outer done]", seen.toString());
+	}
+
+	@Test
+	public void testSelectedMethods() {
+
+		Flaky flaky = new Flaky();
+		flaky.failuresLeft.set(2);
+		InvocationChain chain = new InvocationChain(flaky);
+
+		// retry reads, and never let anyone deposit a negative amount
+		chain.addInterceptor(m -> m.getName().equals("balance"), (method, args, next) -> {
+			for (int attempt = 1;; attempt++) {
+				try {
+					return next.proceed(args);
+				} catch (IllegalStateException e) {
+					if (attempt == 3) {
+						throw e;
+					}
+				}
+			}
+		});
+		chain.addInterceptor(m -> m.getName().equals("deposit"), (method, args, next) -> {
+			if ((Integer) args[1] < 0) {
+				throw new IllegalArgumentException("no withdrawals");
+			}
+			return next.proceed(new Object[] { args[0], (Integer) args[1] * 2 });
+		});
+		Account account = (Account) chain.newProxyInstance();
+
+		account.deposit("ann", 5);
+		assertEquals(10, account.balance("ann"));
+
+		try {
+			account.deposit("ann", -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// refused before getting to the account
+		}
+
+		flaky.failuresLeft.set(3);
+		try {
+			account.balance("ann");
+			fail();
+		} catch (IllegalStateException e) {
+			// gave up after three attempts
+		}
+	}
+
+	@Test
+	public void testDelegator() {
+
+		AtomicInteger calls = new AtomicInteger();
+		Account account = new DynamicDelegator<Account>(new Flaky()) {
+			{
+				addInterceptor((method, args, next) -> {
+					calls.incrementAndGet();
+					return next.proceed(args);
+				});
+			}
+
+			@SuppressWarnings("unused")
+			public int balance(String owner) {
+				return -1;
+			}
+		}.getProxy();
+
+		account.deposit("bob", 1);
+		assertEquals(-1, account.balance("bob"));
+		assertEquals(2, calls.get());
+
+		// interceptors have to go through invoke, so the generated
+		// engine falls back on reflection
+		InvocationChain chain = new InvocationChain(new Flaky());
+		chain.addInterceptor((method, args, next) -> next.proceed(args));
+		assertFalse(chain.isPlain());
+	}
+
+}
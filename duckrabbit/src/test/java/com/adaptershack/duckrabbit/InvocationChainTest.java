@@ -0,0 +1,667 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class InvocationChainTest {
+
+	public interface Greeter {
+		String greet(String name);
+		String farewell(String name);
+	}
+
+	public static class Polite {
+		public String greet(String name) {
+			return "Good day, " + name;
+		}
+	}
+
+	public static class Casual {
+		public String greet(String name) {
+			return "Hey " + name;
+		}
+		public String farewell(String name) {
+			return "Later, " + name;
+		}
+	}
+
+	public interface Shouter {
+		String greet(String name);
+		default String shout(String name) {
+			return greet(name).toUpperCase() + "!";
+		}
+	}
+
+	public interface Scale {
+		long weigh(int grams, Integer count);
+		String describe(String what);
+		String count(int n);
+		String pick(String a, String b);
+		String mark(int a, int b);
+	}
+
+	public static class LooseScale {
+		public int weigh(long grams, int count) {
+			return (int) grams * count;
+		}
+		public String describe(Object what) {
+			return "object " + what;
+		}
+		public String describe(CharSequence what) {
+			return "text " + what;
+		}
+		public String count(Integer n) {
+			return "boxed " + n;
+		}
+		public String count(long n) {
+			return "widened " + n;
+		}
+		public String pick(Object a, String b) {
+			return a + "?";
+		}
+		public String pick(String a, Object b) {
+			return b + "?";
+		}
+		public String mark(long a, int b) {
+			return "first";
+		}
+		public String mark(int a, long b) {
+			return "second";
+		}
+		public String mark(Integer a, Integer b) {
+			return "boxed";
+		}
+	}
+
+	public interface Calculator {
+		int add(int a, int b);
+		long divide(long a, long b) throws java.io.IOException;
+	}
+
+	@Test
+	public void testPrimitivesAndExceptions() throws Exception {
+
+		Calculator calc = DynamicDelegator.getProxy(Calculator.class, new Object() {
+			@SuppressWarnings("unused")
+			public int add(int a, int b) {
+				return a + b;
+			}
+			@SuppressWarnings("unused")
+			public long divide(long a, long b) throws java.io.IOException {
+				if (b == 0) {
+					throw new java.io.IOException("nope");
+				}
+				return a / b;
+			}
+		});
+
+		assertEquals(5, calc.add(2, 3));
+		assertEquals(4L, calc.divide(8L, 2L));
+
+		// the target's own exception comes out, not a wrapper
+		try {
+			calc.divide(1L, 0L);
+			fail();
+		} catch (java.io.IOException e) {
+			assertEquals("nope", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testFirstMatchWins() {
+
+		InvocationChain chain = new InvocationChain(new Polite(), new Casual());
+		chain.addInterface(Greeter.class);
+		Greeter g = (Greeter) chain.newProxyInstance();
+
+		// the second call is served from the memoized dispatch
+		assertEquals("Good day, Bob", g.greet("Bob"));
+		assertEquals("Good day, Bob", g.greet("Bob"));
+		assertEquals("Later, Bob", g.farewell("Bob"));
+	}
+
+	@Test
+	public void testUnimplemented() throws Exception {
+
+		InvocationChain chain = new InvocationChain(new Polite());
+		chain.addInterface(Greeter.class);
+		assertEquals(Arrays.asList(Greeter.class.getMethod("farewell", String.class)),
+			chain.getUnimplementedMethods());
+
+		Greeter g = (Greeter) chain.newProxyInstance();
+		for (int i = 0; i < 2; i++) {
+			try {
+				g.farewell("Bob");
+				fail();
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains("farewell"));
+			}
+		}
+
+		InvocationChain strict = new InvocationChain(new Polite());
+		strict.addInterface(Greeter.class);
+		strict.setFailFast(true);
+		try {
+			strict.newProxyInstance();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertTrue(e.getMessage().contains("farewell"));
+		}
+
+		InvocationChain complete = new InvocationChain(new Polite(), new Casual());
+		complete.addInterface(Greeter.class);
+		complete.setFailFast(true);
+		assertTrue(complete.getUnimplementedMethods().isEmpty());
+		assertEquals("Later, Bob", ((Greeter) complete.newProxyInstance()).farewell("Bob"));
+	}
+
+	@Test
+	public void testFrozenOnceProxied() {
+
+		InvocationChain chain = new InvocationChain(new Casual());
+		chain.addInterface(Greeter.class);
+		Greeter g = (Greeter) chain.newProxyInstance();
+
+		assertEquals("Hey Bob", g.greet("Bob"));
+
+		try {
+			chain.add(new Polite());
+			fail();
+		} catch (IllegalStateException e) {
+			// too late now
+		}
+		try {
+			chain.addInterface(Callable.class);
+			fail();
+		} catch (IllegalStateException e) {
+			// too late now
+		}
+	}
+
+	@Test
+	public void testReplace() {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+
+			Casual primary = new Casual();
+			InvocationChain chain = new InvocationChain(new Polite(), primary);
+			chain.addInterface(Greeter.class);
+			Greeter g = (Greeter) chain.newProxyInstance(engine);
+
+			assertEquals("Later, Bob", g.farewell("Bob"));
+
+			Casual replica = new Casual() {
+				public String farewell(String name) {
+					return "Failing over, " + name;
+				}
+			};
+
+			// must be the same class
+			try {
+				chain.replace(primary, replica);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// a subclass won't do
+			}
+
+			Casual other = new Casual();
+			assertTrue(chain.replace(primary, other));
+			assertFalse(chain.replace(primary, new Casual()));
+			assertEquals("Later, Bob", g.farewell("Bob"));
+		}
+	}
+
+	public static class Host implements Greeter {
+		private final String host;
+
+		public Host(String host) {
+			this.host = host;
+		}
+		public String greet(String name) {
+			return "Hi " + name + ", from " + host;
+		}
+		public String farewell(String name) {
+			return "n/a";
+		}
+	}
+
+	@Test
+	public void testReplaceWrapped() {
+
+		DynamicDelegator<Greeter> delegator = new DynamicDelegator<Greeter>(new Host("primary")) {
+			@SuppressWarnings("unused")
+			public String farewell(String name) {
+				return "Bye " + name;
+			}
+		};
+		Greeter g = delegator.getProxy();
+
+		assertEquals("Hi Bob, from primary", g.greet("Bob"));
+
+		try {
+			delegator.replaceWrapped(new Greeter() {
+				public String greet(String name) {
+					return "?";
+				}
+				public String farewell(String name) {
+					return "?";
+				}
+			});
+			fail();
+		} catch (IllegalArgumentException e) {
+			// not the same class
+		}
+
+		delegator.replaceWrapped(new Host("replica"));
+		assertEquals("Hi Bob, from replica", g.greet("Bob"));
+		assertEquals("Bye Bob", g.farewell("Bob"));
+	}
+
+	@Test
+	public void testLazy() throws Exception {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+
+			AtomicInteger made = new AtomicInteger();
+			DynamicDelegator<Greeter> delegator = new DynamicDelegator<Greeter>(Host.class, () -> {
+				made.incrementAndGet();
+				return new Host("lazy");
+			}) {
+				@SuppressWarnings("unused")
+				public String farewell(String name) {
+					return "Bye " + name;
+				}
+			};
+			Greeter g = delegator.getProxy(engine);
+
+			// overridden methods don't need the wrapped object
+			assertEquals("Bye Bob", g.farewell("Bob"));
+			assertEquals(0, made.get());
+
+			ExecutorService pool = Executors.newFixedThreadPool(4);
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(pool.submit(() -> g.greet("Bob")));
+			}
+			for (Future<String> f : results) {
+				assertEquals("Hi Bob, from lazy", f.get());
+			}
+			pool.shutdown();
+			assertEquals(1, made.get());
+
+			delegator.replaceWrapped(new Host("replica"));
+			assertEquals("Hi Bob, from replica", g.greet("Bob"));
+
+			// replaced before it was ever made, so it never is
+			DynamicDelegator<Greeter> unmade = new DynamicDelegator<Greeter>(Host.class, () -> {
+				made.incrementAndGet();
+				return new Host("lazy");
+			}) {
+			};
+			Greeter u = unmade.getProxy(engine);
+			unmade.replaceWrapped(new Host("early"));
+			assertEquals("Hi Bob, from early", u.greet("Bob"));
+			assertEquals(1, made.get());
+		}
+
+		InvocationChain chain = new InvocationChain(new Polite());
+		chain.addLazy(Casual.class, () -> null);
+		chain.addInterface(Greeter.class);
+		Greeter g = (Greeter) chain.newProxyInstance();
+		assertEquals("Good day, Bob", g.greet("Bob"));
+		try {
+			g.farewell("Bob");
+			fail();
+		} catch (IllegalStateException e) {
+			// the supplier has to come up with something
+		}
+	}
+
+	@Test
+	public void testNested() {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+
+			DynamicDelegator<Greeter> inner = new DynamicDelegator<Greeter>(new Host("primary")) {
+				@SuppressWarnings("unused")
+				public String farewell(String name) {
+					return "Bye " + name + ", " + thisProxy.greet(name);
+				}
+			};
+			Greeter innerProxy = inner.getProxy(engine);
+
+			InvocationChain chain = new InvocationChain(new Polite(), innerProxy);
+			Greeter g = (Greeter) chain.newProxyInstance(engine);
+
+			// the inner proxy's objects are called directly
+			assertEquals(3, chain.getDelegates().length);
+			assertTrue(chain.getDelegates()[1] == inner);
+			assertEquals("Good day, Bob", g.greet("Bob"));
+			assertEquals("Bye Bob, Hi Bob, from primary", g.farewell("Bob"));
+
+			// replacements in the inner chain are seen
+			inner.replaceWrapped(new Host("replica"));
+			assertEquals("Bye Bob, Hi Bob, from replica", g.farewell("Bob"));
+			assertEquals("Bye Bob, Hi Bob, from replica", innerProxy.farewell("Bob"));
+
+			// and the inner proxy can be replaced as a whole
+			DynamicDelegator<Greeter> other = new DynamicDelegator<Greeter>(new Host("other")) {
+				@SuppressWarnings("unused")
+				public String farewell(String name) {
+					return "Bye " + name + ", " + thisProxy.greet(name);
+				}
+			};
+			try {
+				chain.replace(innerProxy, other.getProxy(engine));
+				fail();
+			} catch (IllegalArgumentException e) {
+				// another anonymous class
+			}
+			InvocationChain same = new InvocationChain(inner, new Host("other"));
+			same.addInterface(Greeter.class);
+			Object sameProxy = same.newProxyInstance(engine);
+			assertTrue(chain.replace(innerProxy, sameProxy));
+			assertEquals("Hi Bob, from other", ((Host) chain.getDelegates()[2]).greet("Bob"));
+		}
+
+		// a chain that broadcasts calls the inner proxy as it is
+		Greeter innerProxy = DynamicDelegator.getProxy(new Host("a"), Greeter.class);
+		InvocationChain chain = new InvocationChain(innerProxy, new Host("b"));
+		chain.setBroadcaster(new Broadcaster());
+		assertEquals(2, chain.getDelegates().length);
+		assertTrue(chain.getDelegates()[0] == innerProxy);
+	}
+
+	public static class Parting {
+		public String farewell(String name) {
+			return "So long, " + name;
+		}
+	}
+
+	@Test
+	public void testNestedKeepsToInnerInterfaces() {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+
+			// Casual has farewell too, but the inner proxy doesn't let it through
+			InvocationChain inner = new InvocationChain(new Casual());
+			inner.addInterface(Shouter.class);
+			Object innerProxy = inner.newProxyInstance(engine);
+
+			InvocationChain chain = new InvocationChain(innerProxy, new Parting());
+			chain.addInterface(Greeter.class);
+			Greeter g = (Greeter) chain.newProxyInstance(engine);
+
+			assertEquals(2, chain.getDelegates().length);
+			assertEquals("Hey Bob", g.greet("Bob"));
+			assertEquals("So long, Bob", g.farewell("Bob"));
+			assertEquals("HEY BOB!", ((Shouter) g).shout("Bob"));
+		}
+	}
+
+	public static class Resource implements java.io.Closeable {
+		public void close() {
+		}
+	}
+
+	public static class Task implements Runnable, AutoCloseable {
+		public void run() {
+		}
+		public void close() {
+		}
+	}
+
+	@Test
+	public void testProxyInterfaces() {
+
+		assertTrue(ReflectionUtils.getAllInterfaces(ArrayList.class).containsAll(
+			Arrays.asList(List.class, java.util.Collection.class, Iterable.class)));
+
+		// AutoCloseable is implied by Closeable, and the order is fixed
+		InvocationChain one = new InvocationChain(new Resource(), new Task());
+		InvocationChain two = new InvocationChain(new Task(), new Resource());
+		assertEquals(Arrays.asList(java.io.Closeable.class, Runnable.class),
+			Arrays.asList(one.getProxyInterfaces()));
+		assertEquals(3, one.getInterfaces().length);
+		assertTrue(one.newProxyInstance(ProxyEngine.REFLECTION).getClass()
+			== two.newProxyInstance(ProxyEngine.REFLECTION).getClass());
+	}
+
+	@Test
+	public void testPromotion() throws Exception {
+
+		int before = Invoker.promoteAfter;
+		Invoker.promoteAfter = 100;
+		try {
+			InvocationChain chain = new InvocationChain(new Object() {
+				@SuppressWarnings("unused")
+				public int add(int a, int b) {
+					return a + b;
+				}
+				@SuppressWarnings("unused")
+				public long divide(long a, long b) throws java.io.IOException {
+					if (b == 0) {
+						throw new java.io.IOException("nope");
+					}
+					return a / b;
+				}
+			});
+			chain.addInterface(Calculator.class);
+			// generated proxies don't go through the invokers at all
+			Calculator calc = (Calculator) chain.newProxyInstance(ProxyEngine.REFLECTION);
+
+			Invoker invoker = chain.dispatch(Calculator.class.getMethod("add", int.class, int.class)).invoker;
+			for (int i = 0; i < 200; i++) {
+				assertEquals(i + 1, calc.add(i, 1));
+			}
+			for (int i = 0; i < 500 && !invoker.isPromoted(); i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(invoker.isPromoted());
+			assertEquals(5, calc.add(2, 3));
+			// and the chain calls what it was promoted to directly
+			Invoker promoted = chain.dispatch(Calculator.class.getMethod("add", int.class, int.class)).invoker;
+			assertTrue(promoted != invoker);
+			assertEquals(7, calc.add(3, 4));
+
+			// exceptions still come out as they are
+			Invoker divide = chain.dispatch(Calculator.class.getMethod("divide", long.class, long.class)).invoker;
+			for (int i = 0; i < 500 && !divide.isPromoted(); i++) {
+				assertEquals(4L, calc.divide(8L, 2L));
+				Thread.sleep(1);
+			}
+			assertTrue(divide.isPromoted());
+			try {
+				calc.divide(1L, 0L);
+				fail();
+			} catch (java.io.IOException e) {
+				assertEquals("nope", e.getMessage());
+			}
+		} finally {
+			Invoker.promoteAfter = before;
+		}
+	}
+
+	@Test
+	public void testDefaultMethods() {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+			InvocationChain chain = new InvocationChain(new Polite());
+			chain.addInterface(Shouter.class);
+			chain.setFailFast(true);
+			assertTrue(chain.getUnimplementedMethods().isEmpty());
+			Shouter s = (Shouter) chain.newProxyInstance(engine);
+			assertEquals("GOOD DAY, BOB!", s.shout("Bob"));
+		}
+
+		// the default runs on the proxy, so only its call back
+		// into the proxy goes through the interceptors
+		List<String> seen = new ArrayList<>();
+		InvocationChain chain = new InvocationChain(new Polite());
+		chain.addInterface(Shouter.class);
+		chain.addInterceptor((method, args, next) -> {
+			seen.add(method.getName());
+			return next.proceed(args);
+		});
+		Shouter s = (Shouter) chain.newProxyInstance();
+		assertEquals("GOOD DAY, ANN!", s.shout("Ann"));
+		assertEquals(Arrays.asList("greet"), seen);
+
+		// something in the chain that has the method still wins
+		InvocationChain own = new InvocationChain(new Polite(), new Object() {
+			@SuppressWarnings("unused")
+			public String shout(String name) {
+				return "Oi, " + name;
+			}
+		});
+		own.addInterface(Shouter.class);
+		assertEquals("Oi, Bob", ((Shouter) own.newProxyInstance()).shout("Bob"));
+	}
+
+	@Test
+	public void testObjectMethods() {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+			InvocationChain chain = new InvocationChain(new Polite(), new Casual());
+			chain.addInterface(Greeter.class);
+			Greeter a = (Greeter) chain.newProxyInstance(engine);
+			Greeter b = (Greeter) chain.newProxyInstance(engine);
+
+			// each proxy is equal only to itself, whatever is behind it
+			assertTrue(a.equals(a));
+			assertFalse(a.equals(b));
+			assertFalse(a.equals(null));
+			assertEquals(System.identityHashCode(a), a.hashCode());
+			Map<Greeter, String> names = new HashMap<>();
+			names.put(a, "a");
+			names.put(b, "b");
+			assertEquals("a", names.get(a));
+			assertEquals("b", names.get(b));
+			assertEquals(a.getClass().getName() + "@" + Integer.toHexString(a.hashCode()), a.toString());
+
+			// but all three go to whatever has its own toString
+			Object description = new Object() {
+				@Override
+				public String toString() {
+					return "a polite greeter";
+				}
+			};
+			InvocationChain described = new InvocationChain(new Polite(), description);
+			described.addInterface(Greeter.class);
+			Greeter d = (Greeter) described.newProxyInstance(engine);
+			assertEquals("a polite greeter", d.toString());
+			assertEquals(description.hashCode(), d.hashCode());
+			assertTrue(d.equals(d));
+			assertTrue(d.equals(description));
+
+			// so a proxy for a list is equal to the list, and hashes like it
+			List<String> list = new ArrayList<>(Arrays.asList("x", "y"));
+			InvocationChain listed = new InvocationChain(list);
+			listed.addInterface(List.class);
+			@SuppressWarnings("unchecked")
+			List<String> proxy = (List<String>) listed.newProxyInstance(engine);
+			assertTrue(proxy.equals(proxy));
+			assertTrue(proxy.equals(Arrays.asList("x", "y")));
+			assertFalse(proxy.equals(Arrays.asList("x")));
+			assertEquals(list.hashCode(), proxy.hashCode());
+			assertEquals("[x, y]", proxy.toString());
+			Set<List<String>> lists = new HashSet<>();
+			lists.add(proxy);
+			assertTrue(lists.contains(Arrays.asList("x", "y")));
+			assertTrue(lists.contains(proxy));
+		}
+	}
+
+	@Test
+	public void testLooseMatching() {
+
+		for (ProxyEngine engine : new ProxyEngine[] { ProxyEngine.REFLECTION, ProxyEngine.GENERATED }) {
+			InvocationChain chain = new InvocationChain(new LooseScale());
+			chain.addInterface(Scale.class);
+			chain.setLooseMatching(true);
+			Scale scale = (Scale) chain.newProxyInstance(engine);
+
+			// widened, unboxed, and the result widened on the way back
+			assertEquals(30L, scale.weigh(10, 3));
+
+			// the most specific one wins, and needing no boxing beats
+			// being closer with it, just as with overloading in Java
+			assertEquals("text apple", scale.describe("apple"));
+			assertEquals("widened 4", scale.count(4));
+
+			// and if no one method is the most specific, none is chosen
+			try {
+				scale.pick("a", "b");
+				fail();
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains("pick"));
+			}
+
+			// including when one would be found by boxing
+			try {
+				scale.mark(1, 2);
+				fail();
+			} catch (UnsupportedOperationException e) {
+				assertTrue(e.getMessage().contains("mark"));
+			}
+		}
+
+		// it's off unless asked for
+		InvocationChain exact = new InvocationChain(new LooseScale());
+		exact.addInterface(Scale.class);
+		assertEquals(5, exact.getUnimplementedMethods().size());
+
+		// and can be asked for by a DynamicDelegator too
+		Scale scale = new DynamicDelegator<Scale>(Scale.class) {
+			{
+				looseMatching = true;
+			}
+
+			@SuppressWarnings("unused")
+			public long weigh(double grams, int count) {
+				return (long) (grams * count / 2);
+			}
+		}.getProxy();
+		assertEquals(4L, scale.weigh(4, 2));
+	}
+
+	@Test
+	public void testLooseAndExactProxiesOfOneShape() {
+
+		InvocationChain loose = new InvocationChain(new LooseScale());
+		loose.addInterface(Scale.class);
+		loose.setLooseMatching(true);
+		Scale scale = (Scale) loose.newProxyInstance(ProxyEngine.GENERATED);
+		assertEquals(30L, scale.weigh(10, 3));
+
+		// the same interfaces and classes, but without loose matching,
+		// mustn't get the class generated for the loose chain
+		InvocationChain exact = new InvocationChain(new LooseScale());
+		exact.addInterface(Scale.class);
+		Scale strict = (Scale) exact.newProxyInstance(ProxyEngine.GENERATED);
+		try {
+			strict.weigh(10, 3);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertTrue(e.getMessage().contains("weigh"));
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.adaptershack.duckrabbit.InvocationMetrics.MethodSnapshot;
+
+public class InvocationMetricsTest {
+
+	public interface Store {
+		String get(String key);
+		void put(String key, String value);
+		void clear();
+	}
+
+	public static class Backing {
+		Map<String, String> map = new HashMap<>();
+		public String get(String key) {
+			if (key == null) {
+				throw new IllegalArgumentException("no null keys");
+			}
+			return map.get(key);
+		}
+		public void put(String key, String value) {
+			map.put(key, value);
+		}
+	}
+
+	public static class Shouty extends DynamicDelegator<Store> {
+		public Shouty(Store wrapped, InvocationMetrics metrics) {
+			super(wrapped);
+			this.metrics = metrics;
+		}
+		public void put(String key, String value) {
+			wrapped.put(key, value.toUpperCase());
+		}
+	}
+
+	private static MethodSnapshot find(List<MethodSnapshot> snapshot, String name) {
+		for (MethodSnapshot s : snapshot) {
+			if (s.getMethod().contains("." + name + "(")) {
+				return s;
+			}
+		}
+		throw new AssertionError("no stats for " + name);
+	}
+
+	@Test
+	public void testCounts() {
+
+		InvocationMetrics metrics = new InvocationMetrics();
+		Store backing = DynamicDelegator.getProxy(Store.class, new Backing());
+		Store store = new Shouty(backing, metrics).getProxy(ProxyEngine.GENERATED);
+
+		store.put("a", "apple");
+		store.put("b", "banana");
+		assertEquals("APPLE", store.get("a"));
+		try {
+			store.get(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			store.clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		List<MethodSnapshot> snapshot = metrics.snapshot();
+		assertEquals(3, snapshot.size());
+		assertEquals(5, metrics.getTotalCalls());
+
+		MethodSnapshot put = find(snapshot, "put");
+		assertEquals(2, put.getCalls());
+		assertEquals(2, put.getOverridden());
+		assertEquals(0, put.getDelegated());
+
+		MethodSnapshot get = find(snapshot, "get");
+		assertEquals(2, get.getCalls());
+		assertEquals(2, get.getDelegated());
+		assertEquals(1, get.getErrors());
+
+		long histogramTotal = 0;
+		for (long n : get.getHistogram()) {
+			histogramTotal += n;
+		}
+		assertEquals(2, histogramTotal);
+		assertTrue(get.getP50Nanos() <= get.getP99Nanos());
+
+		// the backing proxy's objects were taken into this chain, and
+		// none of them has clear, so it's a miss here
+		MethodSnapshot clear = find(snapshot, "clear");
+		assertEquals(0, clear.getDelegated());
+		assertEquals(1, clear.getUnsupported());
+		assertEquals(1, clear.getErrors());
+
+		metrics.reset();
+		assertTrue(metrics.snapshot().isEmpty());
+	}
+
+	@Test
+	public void testUnsupported() {
+
+		InvocationChain chain = new InvocationChain(new Backing());
+		chain.addInterface(Store.class);
+		InvocationMetrics metrics = new InvocationMetrics();
+		chain.setMetrics(metrics);
+		Store store = (Store) chain.newProxyInstance(ProxyEngine.GENERATED);
+
+		// metered chains have to go through the chain on every call
+		assertTrue(Proxy.isProxyClass(store.getClass()));
+
+		try {
+			store.clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		MethodSnapshot clear = find(metrics.snapshot(), "clear");
+		assertEquals(1, clear.getUnsupported());
+		assertEquals(1, clear.getErrors());
+
+		try {
+			chain.setMetrics(null);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnmeteredIsUntouched() {
+		Store store = new Shouty(DynamicDelegator.getProxy(Store.class, new Backing()), null)
+			.getProxy(ProxyEngine.GENERATED);
+		assertFalse(Proxy.isProxyClass(store.getClass()));
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+
+		InvocationMetrics metrics = new InvocationMetrics();
+		Store store = new Shouty(DynamicDelegator.getProxy(Store.class, new Backing()), metrics).getProxy();
+		store.put("a", "b");
+
+		ObjectName name = metrics.register("com.adaptershack.duckrabbit:type=InvocationMetricsTest");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1L, server.getAttribute(name, "TotalCalls"));
+			Object[] methods = (Object[]) server.getAttribute(name, "Methods");
+			assertEquals(1, methods.length);
+		} finally {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+	}
+
+}
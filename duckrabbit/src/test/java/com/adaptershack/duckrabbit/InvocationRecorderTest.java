@@ -0,0 +1,183 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.adaptershack.duckrabbit.InvocationRecording.Call;
+
+public class InvocationRecorderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	public enum Priority { LOW, HIGH }
+
+	public interface Queue {
+		void offer(String item, Priority priority, long deadline);
+		int drain(int max, boolean wait);
+	}
+
+	public interface Sink {
+		int addAll(Collection<String> items);
+	}
+
+	public static class ListQueue implements Queue {
+		final List<String> items = new ArrayList<>();
+
+		public void offer(String item, Priority priority, long deadline) {
+			if (item == null) {
+				throw new NullPointerException();
+			}
+			items.add(item + "/" + priority + "/" + deadline);
+		}
+
+		public int drain(int max, boolean wait) {
+			int n = Math.min(max, items.size());
+			items.subList(0, n).clear();
+			return n;
+		}
+	}
+
+	@Test
+	public void testRecordAndRead() throws Exception {
+
+		Path file = folder.newFile("calls.rec").toPath();
+		InvocationRecorder recorder = new InvocationRecorder(file, 16);
+		InvocationChain chain = new InvocationChain(new ListQueue());
+		chain.addInterceptor(recorder);
+		Queue queue = (Queue) chain.newProxyInstance();
+
+		queue.offer("apple", Priority.HIGH, 42L);
+		try {
+			queue.offer(null, Priority.LOW, -1L);
+			fail();
+		} catch (NullPointerException e) {
+			// recorded all the same
+		}
+		assertEquals(1, queue.drain(10, true));
+
+		// more calls than the buffer holds, so it has to keep being drained
+		for (int i = 0; i < 1000; i++) {
+			queue.offer("x", Priority.LOW, i);
+			queue.drain(1, false);
+			if (recorder.getDropped() > 0) {
+				recorder.flush();
+			}
+		}
+		recorder.close();
+		assertEquals(2003 - recorder.getDropped(), recorder.getRecorded());
+
+		InvocationRecording recording = InvocationRecording.read(file);
+		List<Call> calls = recording.getCalls();
+		assertEquals(recorder.getRecorded(), calls.size());
+
+		Call offer = calls.get(0);
+		assertTrue(offer.getMethod().endsWith("Queue.offer(java.lang.String,"
+			+ "com.adaptershack.duckrabbit.InvocationRecorderTest$Priority,long)"));
+		assertEquals(3, offer.getArgumentCount());
+		assertEquals(5L, offer.getArgumentSummary(0));
+		assertEquals(1L, offer.getArgumentSummary(1));
+		assertEquals(42L, offer.getArgumentSummary(2));
+		assertFalse(offer.threw());
+		assertTrue(offer.getLatencyNanos() >= 0);
+		assertTrue(Math.abs(offer.getStartNanos() - TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()))
+			< TimeUnit.MINUTES.toNanos(1));
+
+		Call failed = calls.get(1);
+		assertEquals(offer.getMethodId(), failed.getMethodId());
+		assertTrue(failed.threw());
+		assertNull(failed.getArgumentSummary(0));
+
+		Call drain = calls.get(2);
+		assertTrue(drain.getMethod().endsWith("Queue.drain(int,boolean)"));
+		assertEquals(10, drain.getArgumentSummary(0));
+		assertEquals(true, drain.getArgumentSummary(1));
+
+		// cut down to what was written, and readable a piece at a time
+		assertEquals(0, (Files.size(file) - InvocationRecorder.HEADER_BYTES) % InvocationRecorder.RECORD_BYTES);
+		assertTrue(Files.size(file) < (long) (calls.size() + 10) * InvocationRecorder.RECORD_BYTES);
+		List<Call> windowed = InvocationRecording.read(file, InvocationRecorder.RECORD_BYTES * 3).getCalls();
+		assertEquals(calls.size(), windowed.size());
+		assertEquals(drain.getMethod(), windowed.get(2).getMethod());
+		assertEquals(calls.get(calls.size() - 1).getStartNanos(), windowed.get(windowed.size() - 1).getStartNanos());
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+
+		Path file = folder.newFile("replay.rec").toPath();
+		InvocationRecorder recorder = new InvocationRecorder(file);
+		Queue queue = new DynamicDelegator<Queue>(new ListQueue()) {
+			{
+				addInterceptor(recorder);
+			}
+		}.getProxy();
+		queue.offer("pear", Priority.HIGH, 7L);
+		try {
+			queue.offer(null, Priority.LOW, 0L);
+			fail();
+		} catch (NullPointerException e) {
+			// expected
+		}
+		queue.offer("plum", Priority.LOW, 8L);
+		queue.drain(1, false);
+		recorder.close();
+
+		// strings come back as the same length, the rest as they were
+		ListQueue target = new ListQueue();
+		InvocationRecording recording = InvocationRecording.read(file);
+		assertEquals(4, recording.replay(target, Queue.class, false));
+		assertEquals("[xxxx/LOW/8]", target.items.toString());
+	}
+
+
+	@Test
+	public void testCollectionsRecordedByIdentity() throws Exception {
+
+		Path file = folder.newFile("sink.rec").toPath();
+		InvocationRecorder recorder = new InvocationRecorder(file, 4);
+		InvocationChain chain = new InvocationChain(new Sink() {
+			public int addAll(Collection<String> items) {
+				return 7;
+			}
+		});
+		chain.addInterceptor(recorder);
+		Sink sink = (Sink) chain.newProxyInstance();
+
+		// the recorder mustn't ask a collection anything about itself
+		List<String> broken = new AbstractList<String>() {
+			public String get(int index) {
+				throw new IllegalStateException();
+			}
+			public int size() {
+				throw new IllegalStateException();
+			}
+		};
+		for (int i = 0; i < 10; i++) {
+			assertEquals(7, sink.addAll(broken));
+			recorder.flush();
+		}
+		recorder.close();
+		assertEquals(0, recorder.getDropped());
+
+		List<Call> calls = InvocationRecording.read(file).getCalls();
+		assertEquals(10, calls.size());
+		assertEquals((long) System.identityHashCode(broken), calls.get(9).getArgumentSummary(0));
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class LeakTrackerTest {
+
+	public interface Resource {
+		void close();
+		boolean isClosed();
+	}
+
+	public static class RealResource implements Resource {
+		private volatile boolean closed;
+		public void close() {
+			closed = true;
+		}
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+
+	private static void awaitCollected(LeakTracker<?> tracker) throws InterruptedException {
+		for (int i = 0; i < 100 && tracker.getLive() > 0; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testLeaksAreCounted() throws Exception {
+
+		List<Throwable> sites = new CopyOnWriteArrayList<>();
+		LeakTracker<Resource> tracker = new LeakTracker<>(Resource::isClosed,
+			(resource, site) -> sites.add(site == null ? new Throwable("unsampled") : site), 1);
+
+		for (int i = 0; i < 10; i++) {
+			Resource r = new DynamicDelegator<Resource>(new RealResource()) {
+				{
+					leakTracker = tracker;
+				}
+			}.getProxy();
+			if (i % 2 == 0) {
+				r.close();
+			}
+		}
+		assertTrue(tracker.getLive() > 0);
+
+		awaitCollected(tracker);
+
+		assertEquals(0, tracker.getLive());
+		assertEquals(5, tracker.getReleased());
+		assertEquals(5, tracker.getLeaked());
+
+		// the listener runs on the reaper thread, after the count goes up
+		for (int i = 0; i < 100 && sites.size() < 5; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(5, sites.size());
+		for (Throwable site : sites) {
+			assertNotNull(site.getStackTrace());
+			assertEquals("proxy created here", site.getMessage());
+		}
+	}
+
+	@Test
+	public void testLazyIsTracked() throws Exception {
+
+		LeakTracker<Resource> tracker = new LeakTracker<>(Resource::isClosed, (resource, site) -> { }, 0);
+
+		for (int i = 0; i < 3; i++) {
+			Resource r = new DynamicDelegator<Resource>(RealResource.class, RealResource::new) {
+				{
+					leakTracker = tracker;
+				}
+			}.getProxy();
+			// the first is never made, the second closed, the third leaked
+			if (i == 1) {
+				r.close();
+			} else if (i == 2) {
+				r.isClosed();
+			}
+		}
+		assertEquals(3, tracker.getLive());
+
+		awaitCollected(tracker);
+
+		assertEquals(0, tracker.getLive());
+		assertEquals(2, tracker.getReleased());
+		assertEquals(1, tracker.getLeaked());
+	}
+
+	@Test
+	public void testReplacementIsTracked() throws Exception {
+
+		List<Resource> leaks = new CopyOnWriteArrayList<>();
+		LeakTracker<Resource> tracker =
+			new LeakTracker<>(Resource::isClosed, (resource, site) -> leaks.add(resource), 0);
+
+		// the replacement is left open, though the original was closed
+		Resource leaked = new RealResource();
+		replaced(tracker, leaked).close();
+		// and here the replacement is closed, though the original wasn't
+		Resource closed = new RealResource();
+		closed.close();
+		replaced(tracker, closed);
+
+		awaitCollected(tracker);
+
+		assertEquals(0, tracker.getLive());
+		assertEquals(1, tracker.getReleased());
+		assertEquals(1, tracker.getLeaked());
+		for (int i = 0; i < 100 && leaks.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(Collections.singletonList(leaked), leaks);
+	}
+
+	/**
+	 * Makes a tracked proxy, replaces what it wraps with the given
+	 * resource, and returns the original.
+	 */
+	private static Resource replaced(LeakTracker<Resource> tracker, Resource replacement) {
+		RealResource original = new RealResource();
+		DynamicDelegator<Resource> delegator = new DynamicDelegator<Resource>(original) {
+			{
+				leakTracker = tracker;
+			}
+		};
+		delegator.getProxy();
+		delegator.replaceWrapped(replacement);
+		return original;
+	}
+
+	@Test
+	public void testReachableIsLive() throws Exception {
+
+		LeakTracker<Resource> tracker = new LeakTracker<>(Resource::isClosed, (resource, site) -> { }, 0);
+		Resource kept = new RealResource();
+		Object proxy = DynamicDelegator.getProxy(Resource.class, kept);
+		tracker.track(proxy, kept);
+
+		System.gc();
+		Thread.sleep(50);
+		assertEquals(1, tracker.getLive());
+		assertEquals(0, tracker.getLeaked());
+		assertNotNull(proxy);
+	}
+
+}
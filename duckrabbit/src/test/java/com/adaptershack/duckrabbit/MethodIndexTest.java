@@ -0,0 +1,57 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MethodIndexTest {
+
+	/**
+	 * Proxies a list, whose methods are all the JDK's, so their invokers
+	 * belong to the JDK's classes.
+	 */
+	public static class Probe implements Runnable {
+		@SuppressWarnings("unchecked")
+		public void run() {
+			InvocationChain chain = new InvocationChain(new ArrayList<>(Arrays.asList("a", "b")));
+			chain.addInterface(List.class);
+			List<String> list = (List<String>) chain.newProxyInstance(ProxyEngine.REFLECTION);
+			if( list.size() != 2 || !list.get(0).equals("a") ) {
+				throw new IllegalStateException(list.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testLoaderNotPinnedByJdkClasses() throws Exception {
+
+		// this library, loaded by a loader of its own that no one else knows about
+		URL library = MethodIndex.class.getProtectionDomain().getCodeSource().getLocation();
+		URL tests = Probe.class.getProtectionDomain().getCodeSource().getLocation();
+		WeakReference<ClassLoader> loader = run(new URL[] { library, tests });
+
+		for(int i=0; i<50 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertNull("the library's loader was kept in memory", loader.get());
+	}
+
+	private static WeakReference<ClassLoader> run(URL[] urls) throws Exception {
+		URLClassLoader apart = new URLClassLoader(urls, null);
+		Class<?> probe = apart.loadClass(Probe.class.getName());
+		assertEquals(apart, probe.getClassLoader());
+		((Runnable) probe.getDeclaredConstructor().newInstance()).run();
+		apart.close();
+		return new WeakReference<>(apart);
+	}
+
+}
@@ -0,0 +1,86 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import com.adaptershack.duckrabbit.DuckTest.Duck;
+import com.adaptershack.duckrabbit.GeneratedProxyEngineTest.Mallard;
+
+public class ProxyTemplateTest {
+
+	public static class Daffy extends DynamicDelegator<Duck> {
+		private final String line;
+
+		public Daffy(Duck duck, String line) {
+			super(duck);
+			this.line = line;
+		}
+
+		public String speak() {
+			return line;
+		}
+
+		public Duck self() {
+			return thisProxy;
+		}
+	}
+
+	@Test
+	public void testTemplate() {
+
+		ProxyTemplate<Duck> template = new ProxyTemplate<>(Duck.class, Daffy.class, Mallard.class);
+
+		Mallard m = new Mallard();
+		Daffy d1 = new Daffy(m, "You're despicable");
+		Daffy d2 = new Daffy(m, "Duck season!");
+		Duck one = template.newInstance(d1, m);
+		Duck two = template.newInstance(d2, m);
+
+		assertEquals("You're despicable", one.speak());
+		assertEquals("Duck season!", two.speak());
+		assertTrue(one.canFly());
+		assertFalse(two.inSeason());
+
+		assertSame(one.getClass(), two.getClass());
+		assertSame(one, d1.self());
+		assertSame(two, d2.self());
+	}
+
+	@Test
+	public void testGeneratedTemplate() {
+
+		ProxyTemplate<Duck> template = new ProxyTemplate<>(ProxyEngine.GENERATED, Duck.class, null,
+			Daffy.class, Mallard.class);
+
+		Mallard m = new Mallard();
+		Duck one = template.newInstance(new Daffy(m, "Woo-hoo!"), m);
+
+		assertEquals("Woo-hoo!", one.speak());
+		assertTrue(one.canWalk());
+	}
+
+	@Test
+	public void testWrongDelegates() {
+
+		ProxyTemplate<Duck> template = new ProxyTemplate<>(Duck.class, Daffy.class, Mallard.class);
+
+		try {
+			template.newInstance(new Mallard(), new Mallard());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// that's no Daffy
+		}
+		try {
+			template.newInstance(new Mallard());
+			fail();
+		} catch (IllegalArgumentException e) {
+			// not enough ducks
+		}
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.adaptershack.duckrabbit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ResultCacheTest {
+
+	public interface PriceList {
+		@Cached(maxSize = 2)
+		int priceOf(String sku);
+
+		int stockOf(String sku);
+
+		@InvalidatesCache
+		void reprice(String sku, int price);
+	}
+
+	public static class SlowPriceList implements PriceList {
+		final AtomicInteger lookups = new AtomicInteger();
+		final Map<String, Integer> prices = new HashMap<>();
+		volatile CountDownLatch gate;
+
+		public int priceOf(String sku) {
+			lookups.incrementAndGet();
+			if (gate != null) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			Integer price = prices.get(sku);
+			if (price == null) {
+				throw new IllegalArgumentException(sku);
+			}
+			return price;
+		}
+
+		public int stockOf(String sku) {
+			lookups.incrementAndGet();
+			return 7;
+		}
+
+		public void reprice(String sku, int price) {
+			prices.put(sku, price);
+		}
+	}
+
+	private static PriceList cached(PriceList target, ResultCache cache) {
+		return new DynamicDelegator<PriceList>(target) {
+			{
+				resultCache = cache;
+			}
+		}.getProxy(ProxyEngine.GENERATED);
+	}
+
+	@Test
+	public void testHitsMissesAndEviction() {
+
+		SlowPriceList target = new SlowPriceList();
+		target.prices.put("a", 1);
+		target.prices.put("b", 2);
+		target.prices.put("c", 3);
+		ResultCache cache = new ResultCache();
+		PriceList prices = cached(target, cache);
+
+		assertEquals(1, prices.priceOf("a"));
+		assertEquals(1, prices.priceOf("a"));
+		assertEquals(2, prices.priceOf("b"));
+		assertEquals(2, target.lookups.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		// only two are kept, and "b" was used least recently
+		prices.priceOf("a");
+		prices.priceOf("c");
+		assertEquals(1, cache.getEvictions());
+		prices.priceOf("b");
+		assertEquals(4, target.lookups.get());
+
+		// not marked, so not cached
+		prices.stockOf("a");
+		prices.stockOf("a");
+		assertEquals(6, target.lookups.get());
+
+		// exceptions aren't remembered
+		for (int i = 0; i < 2; i++) {
+			try {
+				prices.priceOf("nope");
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(8, target.lookups.get());
+	}
+
+	@Test
+	public void testInvalidation() {
+
+		SlowPriceList target = new SlowPriceList();
+		target.prices.put("a", 1);
+		ResultCache cache = new ResultCache();
+		PriceList prices = cached(target, cache);
+
+		assertEquals(1, prices.priceOf("a"));
+		prices.reprice("a", 5);
+		assertEquals(5, prices.priceOf("a"));
+		assertEquals(1, cache.getInvalidations());
+	}
+
+	@Test
+	public void testSelectorAndTtl() throws Exception {
+
+		SlowPriceList target = new SlowPriceList();
+		ResultCache cache = new ResultCache()
+			.cache(m -> m.getName().equals("stockOf"), 10, 50, TimeUnit.MILLISECONDS);
+		PriceList prices = cached(target, cache);
+
+		prices.stockOf("a");
+		prices.stockOf("a");
+		assertEquals(1, target.lookups.get());
+
+		Thread.sleep(100);
+		prices.stockOf("a");
+		assertEquals(2, target.lookups.get());
+	}
+
+	@Test
+	public void testConcurrentMissesCollapse() throws Exception {
+
+		SlowPriceList target = new SlowPriceList();
+		target.prices.put("a", 1);
+		target.gate = new CountDownLatch(1);
+		ResultCache cache = new ResultCache();
+		PriceList prices = cached(target, cache);
+
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(pool.submit(() -> prices.priceOf("a")));
+		}
+		while (target.lookups.get() == 0) {
+			Thread.sleep(1);
+		}
+		Thread.sleep(50);
+		target.gate.countDown();
+		for (Future<Integer> f : results) {
+			assertEquals(1, (int) f.get());
+		}
+		pool.shutdown();
+
+		assertEquals(1, target.lookups.get());
+		assertEquals(1, cache.getMisses());
+		assertEquals(7, cache.getHits());
+	}
+
+}